@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all JMH benchmarks of this plugin, activated by the {@code benchmark}
+ * profile:
+ *
+ * <pre>
+ * mvn -P benchmark test
+ * </pre>
+ *
+ * A subset can be selected with {@code -Dbenchmark.include=<regexp>}. Results
+ * are written to {@code target/jmh-report.json} and include the allocation
+ * rates collected by the GC profiler.
+ */
+class BenchmarkRunner {
+
+    @Test
+    void runJmhBenchmarks() throws Exception {
+        Options options = new OptionsBuilder() //
+                .include(System.getProperty("benchmark.include", BenchmarkRunner.class.getPackage().getName() + ".*Benchmark.*")) //
+                .mode(Mode.AverageTime) //
+                .timeUnit(TimeUnit.MICROSECONDS) //
+                .warmupIterations(3) //
+                .measurementIterations(5) //
+                .forks(1) //
+                .shouldFailOnError(true) //
+                .shouldDoGC(true) //
+                .addProfiler(GCProfiler.class) //
+                .resultFormat(ResultFormatType.JSON) //
+                .result("target/jmh-report.json") //
+                .build();
+        new Runner(options).run();
+    }
+}
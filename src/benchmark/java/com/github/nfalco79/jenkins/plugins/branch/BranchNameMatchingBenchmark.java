@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.Named;
+
+import jenkins.scm.api.SCMHead;
+
+/**
+ * Measures the cost to match a single branch name against the names of an
+ * exception.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BranchNameMatchingBenchmark {
+
+    @Param({ "literal", "glob", "negated", "longList" })
+    public String kind;
+
+    private String names;
+    private Named named;
+    private SCMHead head;
+
+    @Setup
+    public void setup() {
+        switch (kind) {
+        case "literal":
+            names = "master";
+            break;
+        case "glob":
+            names = "feature/**/acme-*";
+            break;
+        case "negated":
+            names = "!feature/**";
+            break;
+        default:
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 50; i++) {
+                sb.append(i % 2 == 0 ? "release/" + i : "support/" + i + "/*").append(',');
+            }
+            names = sb.append("feature/**/acme-*").toString();
+            break;
+        }
+        named = new Named(names, null);
+        head = new SCMHead("feature/team/acme-1234");
+    }
+
+    @Benchmark
+    public boolean staticMatch() {
+        return Named.isMatch(head.getName(), names);
+    }
+
+    @Benchmark
+    public boolean compiledMatch() {
+        return named.isMatch(head);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.Named;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import jenkins.branch.BranchProperty;
+import jenkins.branch.JobDecorator;
+import jenkins.scm.api.SCMHead;
+
+/**
+ * Measures the resolution of the properties of 10k branches with strategies
+ * of growing number of exceptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PropertiesResolutionBenchmark {
+
+    private static final int BRANCHES = 10_000;
+
+    /**
+     * Property that does nothing, only used to fill the exceptions.
+     */
+    public static class NoopBranchProperty extends BranchProperty {
+        @Override
+        public <P extends Job<P, B>, B extends Run<P, B>> JobDecorator<P, B> jobDecorator(Class<P> clazz) {
+            return null;
+        }
+    }
+
+    @Param({ "10", "100", "1000" })
+    public int exceptions;
+
+    private MultiNamedExceptionsBranchPropertyStrategy strategy;
+    private List<SCMHead> heads;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(exceptions);
+        Named[] named = new Named[exceptions];
+        for (int i = 0; i < exceptions; i++) {
+            String name;
+            switch (i % 4) {
+            case 0:
+                name = "release/" + i;
+                break;
+            case 1:
+                name = "support/" + i + "/*";
+                break;
+            case 2:
+                name = "feature/**/team-" + i + "-*";
+                break;
+            default:
+                name = "hotfix-" + i + ",bugfix-" + i + "*";
+                break;
+            }
+            named[i] = new Named(name, new BranchProperty[] { new NoopBranchProperty() });
+        }
+        strategy = new MultiNamedExceptionsBranchPropertyStrategy(new BranchProperty[] { new NoopBranchProperty() }, named);
+
+        String[] prefixes = { "release/", "support/", "feature/x/team-", "hotfix-", "bugfix-", "dependabot/npm/" };
+        heads = new ArrayList<>(BRANCHES);
+        for (int i = 0; i < BRANCHES; i++) {
+            String prefix = prefixes[random.nextInt(prefixes.length)];
+            heads.add(new SCMHead(prefix + random.nextInt(exceptions * 2) + (prefix.endsWith("-") ? "-x" : "")));
+        }
+    }
+
+    @Benchmark
+    public void resolve(Blackhole bh) {
+        strategy.clearCache();
+        for (SCMHead head : heads) {
+            bh.consume(strategy.getPropertiesFor(head));
+        }
+    }
+
+    @Benchmark
+    public void resolveCached(Blackhole bh) {
+        for (SCMHead head : heads) {
+            bh.consume(strategy.getPropertiesFor(head));
+        }
+    }
+}
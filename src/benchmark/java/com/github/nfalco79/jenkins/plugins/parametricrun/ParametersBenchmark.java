@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.SafeParametersAction.SafeParametersActionEnvironmentContributor;
+
+import hudson.EnvVars;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.JobProperty;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import hudson.model.TaskListener;
+
+/**
+ * Measures the parameter lookups performed by the parametric actions when a
+ * build is submitted and while it runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParametersBenchmark {
+
+    /**
+     * Job that only knows its parameter definitions, so that the measures do
+     * not include the recording of a mock.
+     */
+    private static final class StubJob extends Job<StubJob, StubRun> {
+        private final ParametersDefinitionProperty parameters;
+
+        private StubJob(ParametersDefinitionProperty parameters) {
+            super(null, "stub");
+            this.parameters = parameters;
+        }
+
+        @Override
+        public <T extends JobProperty> T getProperty(Class<T> clazz) {
+            return clazz == ParametersDefinitionProperty.class ? clazz.cast(parameters) : null;
+        }
+
+        @Override
+        public boolean isBuildable() {
+            return false;
+        }
+
+        @Override
+        protected SortedMap<Integer, ? extends StubRun> _getRuns() {
+            return Collections.emptySortedMap();
+        }
+
+        @Override
+        protected void removeRun(StubRun run) {
+        }
+    }
+
+    /**
+     * Run that only has the parameters action.
+     */
+    private static final class StubRun extends Run<StubJob, StubRun> {
+        private final SafeParametersAction parameters;
+
+        private StubRun(StubJob job, SafeParametersAction parameters) throws IOException {
+            super(job, 0L);
+            this.parameters = parameters;
+        }
+
+        @Override
+        public <T extends Action> T getAction(Class<T> type) {
+            return type == SafeParametersAction.class ? type.cast(parameters) : null;
+        }
+    }
+
+    @Param({ "10", "100", "1000" })
+    public int parameters;
+
+    private SafeParametersAction action;
+    private SafeParametersActionEnvironmentContributor contributor;
+    private Run<?, ?> run;
+    private ParameterAction parameterAction;
+    private String lastName;
+
+    @Setup
+    public void setup() throws Exception {
+        List<ParameterValue> values = new ArrayList<>(parameters);
+        List<ParameterDefinition> actionDefinitions = new ArrayList<>(parameters);
+        List<ParameterDefinition> jobDefinitions = new ArrayList<>(parameters);
+        for (int i = 0; i < parameters; i++) {
+            values.add(new StringParameterValue("PARAM_" + i, "value " + i));
+            actionDefinitions.add(new StringParameterDefinition("ACTION_PARAM_" + i, "value " + i));
+            jobDefinitions.add(new StringParameterDefinition("PARAM_" + i, "value " + i));
+        }
+        lastName = "PARAM_" + (parameters - 1);
+
+        action = new SafeParametersAction(values);
+        contributor = new SafeParametersActionEnvironmentContributor();
+        StubJob job = new StubJob(new ParametersDefinitionProperty(jobDefinitions));
+        run = new StubRun(job, action);
+        parameterAction = new ParameterAction(job, "Run", null, actionDefinitions);
+    }
+
+    @Benchmark
+    public ParameterValue getParameter() {
+        return action.getParameter(lastName);
+    }
+
+    @Benchmark
+    public EnvVars buildEnvironment() throws Exception {
+        EnvVars envs = new EnvVars();
+        contributor.buildEnvironmentFor(run, envs, TaskListener.NULL);
+        return envs;
+    }
+
+    @Benchmark
+    public ParameterDefinition getParameterDefinition() {
+        return parameterAction.getParameterDefinition(lastName);
+    }
+}
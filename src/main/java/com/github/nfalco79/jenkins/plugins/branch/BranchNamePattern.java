@@ -0,0 +1,401 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Compiled form of a comma separated list of branch names as configured in a
+ * {@link MultiNamedExceptionsBranchPropertyStrategy.Named} exception.
+ * <p>
+ * The names are parsed once and matched without splitting or copying the
+ * branch name. Glob parts follow the Ant path matching rules where both
+ * {@code /} and {@code \} are path separators and the match is case
+ * insensitive.
+ *
+ * @author Nikolas Falco
+ */
+final class BranchNamePattern {
+
+    private static final String DEEP_TREE_MATCH = "**";
+
+    /**
+     * A single entry of the comma separated list.
+     */
+    static final class Part {
+        private final String name;
+        private final boolean negated;
+        /**
+         * Path tokens for glob parts, {@code null} for literal parts.
+         */
+        private final String[] tokens;
+        /**
+         * Literal parts that follows a glob compare the branch name with its
+         * separators normalised, as the original matcher did.
+         */
+        private final boolean normalizeSeparators;
+
+        private Part(String name, boolean negated, boolean normalizeSeparators) {
+            this.name = name;
+            this.negated = negated;
+            this.tokens = isGlob(name) ? tokenize(name) : null;
+            this.normalizeSeparators = normalizeSeparators;
+        }
+
+        /**
+         * Returns the name without the invert or escape prefix.
+         *
+         * @return the name to match
+         */
+        @NonNull
+        String getName() {
+            return name;
+        }
+
+        boolean isNegated() {
+            return negated;
+        }
+
+        boolean isLiteral() {
+            return tokens == null;
+        }
+
+        boolean isNormalizingSeparators() {
+            return normalizeSeparators;
+        }
+
+        /**
+         * Returns the characters the branch name must start with to match
+         * this glob, up to the first wildcard or path separator.
+         *
+         * @return the literal prefix, empty if the name starts with a wildcard
+         *         or a separator
+         */
+        @NonNull
+        String getLiteralPrefix() {
+            int end = 0;
+            while (end < name.length()) {
+                char c = name.charAt(end);
+                if (c == '*' || c == '?' || isSeparator(c)) {
+                    break;
+                }
+                end++;
+            }
+            return name.substring(0, end);
+        }
+
+        /**
+         * Returns {@code true} if the branch name satisfies this part, taking
+         * in account the negation.
+         *
+         * @param branchName the branch name
+         * @return {@code true} if the branch satisfies this part
+         */
+        boolean matches(@NonNull String branchName) {
+            return negated != matchesName(branchName);
+        }
+
+        /**
+         * Returns {@code true} if the branch name matches the name of this
+         * part, ignoring the negation.
+         *
+         * @param branchName the branch name
+         * @return {@code true} if the branch matches the name
+         */
+        boolean matchesName(@NonNull String branchName) {
+            if (tokens == null) {
+                return normalizeSeparators ? equalsNormalized(name, branchName) : name.equalsIgnoreCase(branchName);
+            }
+            return matchPath(tokens, 0, branchName, 0);
+        }
+    }
+
+    private final String names;
+    private final List<Part> parts;
+    private final List<String> problems;
+
+    private BranchNamePattern(String names, List<Part> parts, List<String> problems) {
+        this.names = names;
+        this.parts = parts;
+        this.problems = problems;
+    }
+
+    /**
+     * Parses the given comma separated list of names.
+     *
+     * @param names the names as configured by the user
+     * @return the compiled pattern, never {@code null}
+     */
+    @NonNull
+    static BranchNamePattern compile(@NonNull String names) {
+        List<Part> parts = new ArrayList<>();
+        List<String> problems = new ArrayList<>();
+        boolean afterGlob = false;
+        for (String name : StringUtils.split(names, ",")) {
+            name = name.trim();
+            boolean invertMatch;
+            if (name.startsWith("!")) {
+                name = name.substring(1);
+                invertMatch = true;
+            } else if (name.startsWith("\\!") || name.startsWith("\\\\!")) {
+                // provide an escape hatch
+                name = name.substring(1);
+                invertMatch = false;
+            } else {
+                invertMatch = false;
+            }
+            if (name.isEmpty() && problems.isEmpty()) {
+                problems.add(Messages.BranchNamePattern_emptyName());
+            }
+            parts.add(new Part(name, invertMatch, afterGlob));
+            afterGlob |= isGlob(name);
+        }
+        if (parts.isEmpty()) {
+            problems.add(Messages.BranchNamePattern_noName());
+        }
+        return new BranchNamePattern(names, Collections.unmodifiableList(parts), Collections.unmodifiableList(problems));
+    }
+
+    /**
+     * Returns {@code true} if and only if the branch name matches one of the
+     * parts.
+     *
+     * @param branchName the branch name
+     * @return {@code true} if the branch name matches
+     */
+    boolean matches(@NonNull String branchName) {
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i).matches(branchName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    List<Part> getParts() {
+        return parts;
+    }
+
+    /**
+     * Returns the reasons why this pattern is not valid.
+     *
+     * @return a list of problems, empty if the pattern is valid
+     */
+    @NonNull
+    List<String> getProblems() {
+        return problems;
+    }
+
+    boolean isValid() {
+        return problems.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return names;
+    }
+
+    private static boolean isGlob(String name) {
+        return name.indexOf('*') != -1 || name.indexOf('?') != -1;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '\\';
+    }
+
+    /*
+     * Case insensitive comparison where separators in the branch name are
+     * replaced by the system separator.
+     */
+    private static boolean equalsNormalized(String name, String branchName) {
+        if (name.length() != branchName.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c1 = name.charAt(i);
+            char c2 = branchName.charAt(i);
+            if (isSeparator(c2)) {
+                if (c1 != File.separatorChar) {
+                    return false;
+                }
+            } else if (c1 != c2 && !name.regionMatches(true, i, branchName, i, 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOfSeparator(String str, int from) {
+        for (int i = Math.max(from, 0); i < str.length(); i++) {
+            if (isSeparator(str.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns the length of the root of an absolute path as computed by
+     * FileUtils.dissect, 0 if the path is relative.
+     */
+    private static int rootEnd(String path) {
+        if (path.isEmpty() || !isSeparator(path.charAt(0))) {
+            return 0;
+        }
+        if (path.length() > 1 && isSeparator(path.charAt(1))) {
+            // UNC path
+            int nextsep = indexOfSeparator(path, 2);
+            nextsep = indexOfSeparator(path, nextsep + 1);
+            return nextsep > 2 ? nextsep + 1 : path.length();
+        }
+        return 1;
+    }
+
+    /*
+     * Same tokens produced by SelectorUtils.tokenizePathAsArray where the root
+     * of an absolute path is kept as first token.
+     */
+    private static String[] tokenize(String path) {
+        List<String> tokens = new ArrayList<>();
+        int i = rootEnd(path);
+        if (i > 0) {
+            tokens.add(path.substring(0, i));
+        }
+        while (i < path.length()) {
+            while (i < path.length() && isSeparator(path.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < path.length() && !isSeparator(path.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                tokens.add(path.substring(start, i));
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /*
+     * Returns the index of the first character of the next path token in str
+     * starting from the given position, str.length() if none.
+     */
+    private static int nextToken(String str, int from) {
+        if (from == 0 && rootEnd(str) > 0) {
+            return 0;
+        }
+        while (from < str.length() && isSeparator(str.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int tokenEnd(String str, int start) {
+        if (start == 0) {
+            int root = rootEnd(str);
+            if (root > 0) {
+                return root;
+            }
+        }
+        int end = start;
+        while (end < str.length() && !isSeparator(str.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /*
+     * Recursive equivalent of SelectorUtils.matchPath that walks the string
+     * tokens by offsets instead of splitting it.
+     */
+    private static boolean matchPath(String[] patterns, int patIdx, String str, int strPos) {
+        int start = nextToken(str, strPos);
+        if (patIdx == patterns.length) {
+            return start >= str.length();
+        }
+        String pattern = patterns[patIdx];
+        if (DEEP_TREE_MATCH.equals(pattern)) {
+            // collapse consecutive ** tokens
+            int next = patIdx + 1;
+            while (next < patterns.length && DEEP_TREE_MATCH.equals(patterns[next])) {
+                next++;
+            }
+            if (next == patterns.length) {
+                return true;
+            }
+            int pos = start;
+            while (pos < str.length()) {
+                if (matchPath(patterns, next, str, pos)) {
+                    return true;
+                }
+                pos = nextToken(str, tokenEnd(str, pos));
+            }
+            return false;
+        }
+        if (start >= str.length()) {
+            return false;
+        }
+        int end = tokenEnd(str, start);
+        if (!matchToken(pattern, str, start, end)) {
+            return false;
+        }
+        return matchPath(patterns, patIdx + 1, str, end);
+    }
+
+    /*
+     * Case insensitive wildcard match of pattern against str[start, end).
+     */
+    private static boolean matchToken(String pattern, String str, int start, int end) {
+        int p = 0;
+        int s = start;
+        int starIdx = -1;
+        int mark = start;
+        while (s < end) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starIdx = p++;
+                mark = s;
+            } else if (p < pattern.length() && (pattern.charAt(p) == '?' || equalsIgnoreCase(pattern.charAt(p), str.charAt(s)))) {
+                p++;
+                s++;
+            } else if (starIdx != -1) {
+                p = starIdx + 1;
+                s = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static boolean equalsIgnoreCase(char c1, char c2) {
+        if (c1 == c2 || isSeparator(c1) && isSeparator(c2)) {
+            return true;
+        }
+        return Character.toUpperCase(c1) == Character.toUpperCase(c2);
+    }
+}
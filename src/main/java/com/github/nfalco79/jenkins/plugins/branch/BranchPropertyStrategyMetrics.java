@@ -0,0 +1,320 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.Named;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.branch.BranchSource;
+import jenkins.branch.MultiBranchProject;
+import jenkins.model.Jenkins;
+
+/**
+ * Collects how much time is spent to resolve the branch properties by
+ * {@link MultiNamedExceptionsBranchPropertyStrategy}.
+ * <p>
+ * Counters are lock free so they can be kept enabled in production. Data are
+ * published through JMX and the {@link BranchPropertyStrategyMetricsLink}
+ * page.
+ *
+ * @author Nikolas Falco
+ */
+public final class BranchPropertyStrategyMetrics implements BranchPropertyStrategyMetricsMXBean {
+    private static final Logger LOGGER = Logger.getLogger(BranchPropertyStrategyMetrics.class.getName());
+
+    private static final BranchPropertyStrategyMetrics INSTANCE = new BranchPropertyStrategyMetrics();
+
+    private final LatencyHistogram propertiesFor = new LatencyHistogram();
+    private final LatencyHistogram indexLookup = new LatencyHistogram();
+    private final LongAdder defaultProperties = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * Hits of an exception configured in a multibranch project.
+     */
+    public static final class ExceptionHits {
+        private final String owner;
+        private final int position;
+        private final String exception;
+        private final long hits;
+
+        ExceptionHits(String owner, int position, String exception, long hits) {
+            this.owner = owner;
+            this.position = position;
+            this.exception = exception;
+            this.hits = hits;
+        }
+
+        /**
+         * Returns the full name of the multibranch project.
+         *
+         * @return the project full name
+         */
+        @NonNull
+        public String getOwner() {
+            return owner;
+        }
+
+        /**
+         * Returns the position of the exception in the strategy, starting
+         * from one.
+         *
+         * @return the exception position
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        @NonNull
+        public String getException() {
+            return exception;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+    }
+
+    private BranchPropertyStrategyMetrics() {
+    }
+
+    /**
+     * Returns the metrics collected since Jenkins started.
+     *
+     * @return the metrics singleton
+     */
+    @NonNull
+    public static BranchPropertyStrategyMetrics get() {
+        return INSTANCE;
+    }
+
+    void recordPropertiesFor(long nanos) {
+        propertiesFor.record(nanos);
+    }
+
+    void recordIndexLookup(long nanos) {
+        indexLookup.record(nanos);
+    }
+
+    void recordDefaultProperties() {
+        defaultProperties.increment();
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public long getPropertiesForCount() {
+        return propertiesFor.getCount();
+    }
+
+    @Override
+    public long getPropertiesForMeanNanos() {
+        return propertiesFor.getMeanNanos();
+    }
+
+    @Override
+    public long getPropertiesForP50Nanos() {
+        return propertiesFor.getPercentileNanos(50);
+    }
+
+    @Override
+    public long getPropertiesForP99Nanos() {
+        return propertiesFor.getPercentileNanos(99);
+    }
+
+    @Override
+    public long getIndexLookupCount() {
+        return indexLookup.getCount();
+    }
+
+    @Override
+    public long getIndexLookupMeanNanos() {
+        return indexLookup.getMeanNanos();
+    }
+
+    @Override
+    public long getIndexLookupP99Nanos() {
+        return indexLookup.getPercentileNanos(99);
+    }
+
+    @Override
+    public long getDefaultPropertiesCount() {
+        return defaultProperties.sum();
+    }
+
+    /**
+     * Returns how many times the properties of a branch were served from the
+     * cache of a strategy, summed over all strategies.
+     *
+     * @return the number of cache hits
+     */
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Returns how many times the properties of a branch had to be resolved
+     * because they were not in the cache of the strategy.
+     *
+     * @return the number of cache misses
+     */
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Returns the percentage of the requests served from the cache.
+     *
+     * @return the cache hit rate, {@code 0} if there were no requests
+     */
+    @Override
+    public int getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total > 0 ? (int) (hits * 100 / total) : 0;
+    }
+
+    /**
+     * Returns how many times the properties of each exception of each
+     * multibranch project were applied to a resolved branch name, the most
+     * used first. Exceptions that never matched are listed with zero hits.
+     * <p>
+     * Hits are counted when the properties of a branch name are resolved,
+     * branch names served from the cache of the strategy are not counted.
+     *
+     * @return the hits of all configured exceptions
+     */
+    @NonNull
+    public List<ExceptionHits> getExceptionHitList() {
+        List<ExceptionHits> result = new ArrayList<>();
+        forEachStrategy((owner, strategy) -> {
+            long[] hits = strategy.getExceptionHits();
+            List<Named> exceptions = strategy.getNamedExceptions();
+            for (int i = 0; i < hits.length && i < exceptions.size(); i++) {
+                result.add(new ExceptionHits(owner, i + 1, exceptions.get(i).getName(), hits[i]));
+            }
+        });
+        result.sort(Comparator.comparingLong(ExceptionHits::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Returns how many times the properties of each exception were applied
+     * to a resolved branch name, keyed by project, exception position and
+     * name.
+     *
+     * @return the hits by exception
+     */
+    @Override
+    public Map<String, Long> getExceptionHits() {
+        Map<String, Long> hits = new LinkedHashMap<>();
+        for (ExceptionHits exception : getExceptionHitList()) {
+            hits.put(exception.getOwner() + " #" + exception.getPosition() + " " + exception.getException(), exception.getHits());
+        }
+        return hits;
+    }
+
+    @Override
+    public void reset() {
+        propertiesFor.reset();
+        indexLookup.reset();
+        defaultProperties.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        forEachStrategy((owner, strategy) -> strategy.resetExceptionHits());
+    }
+
+    /*
+     * Visits the strategies of all multibranch projects, regardless the
+     * permissions of the current user.
+     */
+    private static void forEachStrategy(BiConsumer<String, MultiNamedExceptionsBranchPropertyStrategy> action) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (MultiBranchProject<?, ?> project : jenkins.allItems(MultiBranchProject.class)) {
+                for (BranchSource source : project.getSources()) {
+                    if (source.getStrategy() instanceof MultiNamedExceptionsBranchPropertyStrategy) {
+                        action.accept(project.getFullName(), (MultiNamedExceptionsBranchPropertyStrategy) source.getStrategy());
+                    }
+                }
+            }
+        }
+    }
+
+    private static ObjectName objectName() throws JMException {
+        return new ObjectName(BranchPropertyStrategyMetrics.class.getPackage().getName() + ":type=BranchPropertyStrategyMetrics");
+    }
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(INSTANCE, name);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register branch property strategy metrics in JMX", e);
+        }
+    }
+
+    @Terminator
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE, "Failed to unregister branch property strategy metrics from JMX", e);
+        }
+    }
+}
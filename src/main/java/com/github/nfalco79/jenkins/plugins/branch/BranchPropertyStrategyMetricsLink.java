@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.PermissionDecisionCache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+
+/**
+ * Administration page that shows the {@link BranchPropertyStrategyMetrics}.
+ *
+ * @author Nikolas Falco
+ */
+@Extension
+public class BranchPropertyStrategyMetricsLink extends ManagementLink {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getIconFileName() {
+        return "symbol-analytics";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDisplayName() {
+        return Messages.BranchPropertyStrategyMetricsLink_DisplayName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDescription() {
+        return Messages.BranchPropertyStrategyMetricsLink_Description();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getUrlName() {
+        return "branch-properties-metrics";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Category getCategory() {
+        return Category.STATUS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    public BranchPropertyStrategyMetrics getMetrics() {
+        return BranchPropertyStrategyMetrics.get();
+    }
+
+    public PermissionDecisionCache getPermissionCache() {
+        return PermissionDecisionCache.get();
+    }
+
+    /**
+     * Clears all collected data.
+     *
+     * @return redirect to this page
+     */
+    @RequirePOST
+    public HttpResponse doReset() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        BranchPropertyStrategyMetrics.get().reset();
+        return HttpResponses.redirectToDot();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link BranchPropertyStrategyMetrics}.
+ *
+ * @author Nikolas Falco
+ */
+public interface BranchPropertyStrategyMetricsMXBean {
+
+    long getPropertiesForCount();
+
+    long getPropertiesForMeanNanos();
+
+    long getPropertiesForP50Nanos();
+
+    long getPropertiesForP99Nanos();
+
+    long getIndexLookupCount();
+
+    long getIndexLookupMeanNanos();
+
+    long getIndexLookupP99Nanos();
+
+    long getDefaultPropertiesCount();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    int getCacheHitRate();
+
+    Map<String, Long> getExceptionHits();
+
+    void reset();
+}
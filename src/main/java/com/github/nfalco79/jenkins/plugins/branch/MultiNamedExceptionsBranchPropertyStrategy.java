@@ -16,16 +16,38 @@
  */
 package com.github.nfalco79.jenkins.plugins.branch;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.apache.commons.lang.StringUtils;
-import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterBranchProperty;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -33,10 +55,19 @@ import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletResponse;
 import jenkins.branch.BranchProperty;
 import jenkins.branch.BranchPropertyStrategy;
 import jenkins.branch.BranchPropertyStrategyDescriptor;
+import jenkins.model.Jenkins;
 import jenkins.scm.api.SCMHead;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONObject;
 
 /**
  * Allows matching named branches to get different properties from the rest.
@@ -44,6 +75,19 @@ import jenkins.scm.api.SCMHead;
  * @author Nikolas Falco
  */
 public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertyStrategy {
+    /**
+     * The maximum number of branch names which resolved properties are cached
+     * by each strategy, {@code 0} disables the cache.
+     */
+    private static final int CACHE_SIZE = SystemProperties.getInteger(MultiNamedExceptionsBranchPropertyStrategy.class.getName() + ".cacheSize", 1024);
+
+    /**
+     * The minimum number of heads evaluated in parallel by
+     * {@link #getPropertiesFor(Collection)}, {@code 0} disables the parallel
+     * evaluation.
+     */
+    private static final int PARALLEL_THRESHOLD = SystemProperties.getInteger(MultiNamedExceptionsBranchPropertyStrategy.class.getName() + ".parallelThreshold", 1000);
+
     /**
      * The properties that all non-exception {@link SCMHead}s will get.
      */
@@ -56,6 +100,28 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
     @NonNull
     private final List<Named> namedExceptions;
 
+    /**
+     * How the properties of the matching exceptions are combined.
+     */
+    @CheckForNull
+    private EvaluationMode evaluationMode;
+
+    /**
+     * The index of all exception names.
+     */
+    private transient volatile NamedExceptionsIndex index;
+
+    /**
+     * The properties already resolved by branch name.
+     */
+    private transient volatile PropertiesCache cache;
+
+    /**
+     * How many times each exception contributed to the properties of a
+     * resolved branch name, by exception position.
+     */
+    private transient volatile LongAdder[] exceptionHits;
+
     /**
      * Stapler's constructor.
      *
@@ -69,6 +135,29 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
                 defaultProperties == null ? Collections.<BranchProperty>emptyList() : Arrays.asList(defaultProperties);
         this.namedExceptions =
                 namedExceptions == null ? Collections.<Named>emptyList() : Arrays.asList(namedExceptions);
+        this.index = new NamedExceptionsIndex(this.namedExceptions);
+        this.cache = new PropertiesCache(CACHE_SIZE);
+        this.exceptionHits = newHitCounters(this.namedExceptions.size());
+    }
+
+    /**
+     * Builds the index of the exceptions once loaded from disk.
+     *
+     * @return this instance
+     */
+    protected Object readResolve() {
+        index = new NamedExceptionsIndex(namedExceptions);
+        cache = new PropertiesCache(CACHE_SIZE);
+        exceptionHits = newHitCounters(namedExceptions.size());
+        return this;
+    }
+
+    private static LongAdder[] newHitCounters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
     }
 
     /**
@@ -93,25 +182,332 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
         return namedExceptions;
     }
 
+    /**
+     * Returns how the properties of the matching exceptions are combined.
+     *
+     * @return the evaluation mode, {@link EvaluationMode#UNION} if not set
+     */
+    @NonNull
+    public EvaluationMode getEvaluationMode() {
+        return evaluationMode != null ? evaluationMode : EvaluationMode.UNION;
+    }
+
+    /**
+     * Sets how the properties of the matching exceptions are combined.
+     *
+     * @param evaluationMode the evaluation mode, {@code null} to use the
+     *        default
+     */
+    @DataBoundSetter
+    public void setEvaluationMode(@CheckForNull EvaluationMode evaluationMode) {
+        this.evaluationMode = evaluationMode == EvaluationMode.UNION ? null : evaluationMode;
+        cache.clear();
+    }
+
     /**
      * {@inheritDoc}
+     * <p>
+     * The returned list is immutable and shared between the heads with the
+     * same name.
      */
     @NonNull
     @Override
     public List<BranchProperty> getPropertiesFor(SCMHead head) {
+        long start = System.nanoTime();
+        try {
+            return cache.get(head.getName(), name -> resolveProperties(name));
+        } finally {
+            BranchPropertyStrategyMetrics.get().recordPropertiesFor(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the properties of all given heads in one pass.
+     * <p>
+     * Collections with at least {@code parallelThreshold} heads are split in
+     * chunks evaluated by a small dedicated pool together with the calling
+     * thread, smaller collections are evaluated on the calling thread. The
+     * properties of a branch name are resolved once thanks to the cache.
+     *
+     * @param heads the heads to evaluate
+     * @return the properties of each head, in the same order of the given
+     *         collection
+     */
+    @NonNull
+    public Map<SCMHead, List<BranchProperty>> getPropertiesFor(@NonNull Collection<? extends SCMHead> heads) {
+        List<SCMHead> list = new ArrayList<>(heads);
+        List<List<BranchProperty>> properties = PARALLEL_THRESHOLD > 0 && list.size() >= PARALLEL_THRESHOLD
+                ? evaluateInParallel(list)
+                : evaluate(list);
+
+        Map<SCMHead, List<BranchProperty>> result = new LinkedHashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            result.put(list.get(i), properties.get(i));
+        }
+        return result;
+    }
+
+    private List<List<BranchProperty>> evaluate(List<SCMHead> heads) {
+        List<List<BranchProperty>> properties = new ArrayList<>(heads.size());
+        for (SCMHead head : heads) {
+            properties.add(getPropertiesFor(head));
+        }
+        return properties;
+    }
+
+    /*
+     * The calling thread evaluates the first chunk while the pool evaluates
+     * the others, a chunk that does not fit the pool queue is evaluated by
+     * the calling thread at submission.
+     */
+    private List<List<BranchProperty>> evaluateInParallel(List<SCMHead> heads) {
+        int chunkSize = (heads.size() + BulkEvaluation.THREADS) / (BulkEvaluation.THREADS + 1);
+        List<List<SCMHead>> chunks = new ArrayList<>();
+        List<Future<List<List<BranchProperty>>>> futures = new ArrayList<>();
+        for (int from = chunkSize; from < heads.size(); from += chunkSize) {
+            List<SCMHead> chunk = heads.subList(from, Math.min(from + chunkSize, heads.size()));
+            chunks.add(chunk);
+            futures.add(BulkEvaluation.EXECUTOR.submit(() -> evaluate(chunk)));
+        }
+
+        List<List<BranchProperty>> properties = evaluate(heads.subList(0, Math.min(chunkSize, heads.size())));
+        for (int i = 0; i < futures.size(); i++) {
+            properties.addAll(join(futures.get(i), chunks.get(i)));
+        }
+        return properties;
+    }
+
+    private List<List<BranchProperty>> join(Future<List<List<BranchProperty>>> future, List<SCMHead> chunk) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // keeps the interruption for the caller and completes on this thread
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return evaluate(chunk);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Returns the properties of the given branch name without using the
+     * cache, the evaluation is recorded in the metrics.
+     *
+     * @param branchName the branch name
+     * @return the properties of the branch
+     */
+    @NonNull
+    private List<BranchProperty> resolveProperties(@NonNull String branchName) {
+        BranchPropertyStrategyMetrics metrics = BranchPropertyStrategyMetrics.get();
+        long start = System.nanoTime();
+        int[] ids = getExceptionIds(branchName);
+        metrics.recordIndexLookup(System.nanoTime() - start);
+        for (int id : ids) {
+            exceptionHits[id].increment();
+        }
+        return resolveProperties(toExceptions(ids), metrics);
+    }
+
+    /**
+     * Returns the properties contributed by the given matching exceptions,
+     * as returned by {@link #getExceptionsFor(String)}, without recording
+     * the evaluation in the metrics.
+     *
+     * @param exceptions the exceptions that match a branch name
+     * @return the properties of the branch
+     */
+    @NonNull
+    List<BranchProperty> resolveProperties(@NonNull List<Named> exceptions) {
+        return resolveProperties(exceptions, null);
+    }
+
+    private List<BranchProperty> resolveProperties(List<Named> exceptions, @CheckForNull BranchPropertyStrategyMetrics metrics) {
         List<BranchProperty> properties = new ArrayList<>();
 
-        for (Named named : namedExceptions) {
-            if (named.isMatch(head)) {
-                properties.addAll(named.getProps());
+        EvaluationMode mode = getEvaluationMode();
+        Set<Class<?>> types = new HashSet<>();
+        for (Named named : exceptions) {
+            for (BranchProperty property : named.getProps()) {
+                // each descriptor is bound to a single property class
+                if (mode != EvaluationMode.ORDERED_MERGE || types.add(property.getClass())) {
+                    properties.add(property);
+                }
             }
         }
 
         if (properties.isEmpty()) {
             // if no one defined adds default
+            if (metrics != null) {
+                metrics.recordDefaultProperties();
+            }
             properties.addAll(defaultProperties);
         }
-        return properties;
+        return coalesce(properties);
+    }
+
+    /*
+     * Merges the parametric properties of the same type so that each branch
+     * job is decorated once per action type.
+     */
+    private static List<BranchProperty> coalesce(List<BranchProperty> properties) {
+        List<BranchProperty> result = new ArrayList<>(properties.size());
+        Map<Class<?>, Integer> positions = new HashMap<>();
+        for (BranchProperty property : properties) {
+            if (property instanceof ParameterBranchProperty) {
+                Integer position = positions.putIfAbsent(property.getClass(), result.size());
+                if (position != null) {
+                    ParameterBranchProperty first = (ParameterBranchProperty) result.get(position);
+                    result.set(position, first.merge((ParameterBranchProperty) property));
+                    continue;
+                }
+            }
+            result.add(property);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the exceptions that contribute to the properties of the given
+     * branch name.
+     *
+     * @param branchName the branch name
+     * @return the matching exceptions in configuration order
+     */
+    @NonNull
+    List<Named> getExceptionsFor(@NonNull String branchName) {
+        return toExceptions(getExceptionIds(branchName));
+    }
+
+    private List<Named> toExceptions(int[] ids) {
+        List<Named> exceptions = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            exceptions.add(namedExceptions.get(id));
+        }
+        return exceptions;
+    }
+
+    /*
+     * Returns the positions of the exceptions that contribute to the
+     * properties of the given branch name, in ascending order.
+     */
+    private int[] getExceptionIds(String branchName) {
+        if (getEvaluationMode() == EvaluationMode.FIRST_MATCH) {
+            int first = index.firstMatch(branchName);
+            return first >= 0 ? new int[] { first } : new int[0];
+        }
+        return index.matches(branchName).stream().toArray();
+    }
+
+    /**
+     * Returns how many times each exception contributed to the properties
+     * of a branch name resolved by this strategy. Branch names served from
+     * the cache are not counted.
+     *
+     * @return the hits by exception position
+     */
+    @NonNull
+    long[] getExceptionHits() {
+        LongAdder[] counters = exceptionHits;
+        long[] hits = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            hits[i] = counters[i].sum();
+        }
+        return hits;
+    }
+
+    void resetExceptionHits() {
+        for (LongAdder counter : exceptionHits) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Discards all properties resolved so far, to be called when the
+     * configuration of this strategy changes.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Returns how many times the properties of a branch was served from the
+     * cache.
+     *
+     * @return the number of cache hits.
+     */
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * Returns how many times the properties of a branch had to be resolved.
+     *
+     * @return the number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * How the properties of the exceptions matching a branch are combined.
+     */
+    public enum EvaluationMode {
+        /**
+         * All properties of all matching exceptions.
+         */
+        UNION {
+            @Override
+            public String getDisplayName() {
+                return Messages.MultiNamedExceptionsBranchPropertyStrategy_EvaluationMode_union();
+            }
+        },
+        /**
+         * Only the properties of the first matching exception, the others
+         * are not evaluated.
+         */
+        FIRST_MATCH {
+            @Override
+            public String getDisplayName() {
+                return Messages.MultiNamedExceptionsBranchPropertyStrategy_EvaluationMode_firstMatch();
+            }
+        },
+        /**
+         * One property of each type, taken from the first matching exception
+         * that defines it.
+         */
+        ORDERED_MERGE {
+            @Override
+            public String getDisplayName() {
+                return Messages.MultiNamedExceptionsBranchPropertyStrategy_EvaluationMode_orderedMerge();
+            }
+        };
+
+        public abstract String getDisplayName();
+    }
+
+    /**
+     * The pool of the bulk evaluations, created on first use.
+     */
+    private static final class BulkEvaluation {
+        private static final int THREADS = Math.max(SystemProperties.getInteger(MultiNamedExceptionsBranchPropertyStrategy.class.getName() + ".parallelThreads", //
+                Math.min(Runtime.getRuntime().availableProcessors(), 4)), 1);
+        private static final ExecutorService EXECUTOR = newExecutor();
+
+        private static ExecutorService newExecutor() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(THREADS),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "MultiNamedExceptionsBranchPropertyStrategy.bulk"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
     }
 
     /**
@@ -120,6 +516,11 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
     @Symbol("multiNamedBranches")
     @Extension
     public static class DescriptorImpl extends BranchPropertyStrategyDescriptor {
+        /**
+         * The field with the branch names to preview.
+         */
+        private static final String PREVIEW_BRANCH_NAMES = "branchNames";
+
         /**
          * {@inheritDoc}
          */
@@ -127,6 +528,59 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
         public String getDisplayName() {
             return Messages.MultiNamedExceptionsBranchPropertyStrategy_DisplayName();
         }
+
+        /**
+         * Shows the properties that each of the given branch names would get
+         * from the submitted, not yet saved, strategy.
+         * <p>
+         * The strategy is bound from the {@code json} form field while the
+         * branch names, one per line, are read from the {@code branchNames}
+         * field, either uploaded as a file or pasted as text. Results are
+         * streamed as a JSON array while they are evaluated.
+         *
+         * @param req the request
+         * @param rsp the response
+         * @throws IOException in case of failure reading the branch names or
+         *         writing the results
+         * @throws ServletException in case the form can not be parsed
+         */
+        @RequirePOST
+        public void doPreview(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException, ServletException {
+            Item item = req.findAncestorObject(Item.class);
+            if (item != null) {
+                item.checkPermission(Item.CONFIGURE);
+            } else {
+                Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            }
+
+            MultiNamedExceptionsBranchPropertyStrategy strategy;
+            try {
+                strategy = (MultiNamedExceptionsBranchPropertyStrategy) newInstance(req, req.getSubmittedForm());
+            } catch (FormException e) {
+                rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+
+            Reader branchNames;
+            String contentType = req.getContentType();
+            if (contentType != null && contentType.startsWith("multipart/")) {
+                if (req.getFileItem2(PREVIEW_BRANCH_NAMES) == null) {
+                    rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.MultiNamedExceptionsBranchPropertyStrategy_preview_noBranchNames());
+                    return;
+                }
+                branchNames = new InputStreamReader(req.getFileItem2(PREVIEW_BRANCH_NAMES).getInputStream(), StandardCharsets.UTF_8);
+            } else {
+                String value = req.getParameter(PREVIEW_BRANCH_NAMES);
+                if (value == null) {
+                    rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.MultiNamedExceptionsBranchPropertyStrategy_preview_noBranchNames());
+                    return;
+                }
+                branchNames = new StringReader(value);
+            }
+
+            rsp.setContentType("application/json;charset=UTF-8");
+            new StrategyPreview(strategy).write(branchNames, rsp.getWriter());
+        }
     }
 
     /**
@@ -145,6 +599,11 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
         @NonNull
         private final String name;
 
+        /**
+         * The compiled form of {@link #name}.
+         */
+        private transient volatile BranchNamePattern pattern;
+
         /**
          * Constructor
          *
@@ -156,6 +615,17 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
         public Named(@CheckForNull String name, @CheckForNull BranchProperty[] props) {
             this.name = Util.fixNull(name);
             this.props = props == null ? Collections.<BranchProperty>emptyList() : Arrays.asList(props);
+            this.pattern = BranchNamePattern.compile(this.name);
+        }
+
+        /**
+         * Compiles the name(s) to match once loaded from disk.
+         *
+         * @return this instance
+         */
+        protected Object readResolve() {
+            pattern = BranchNamePattern.compile(name);
+            return this;
         }
 
         /**
@@ -168,6 +638,16 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
             return props;
         }
 
+        /**
+         * Returns the compiled name(s) to match.
+         *
+         * @return the compiled pattern.
+         */
+        @NonNull
+        BranchNamePattern getPattern() {
+            return pattern;
+        }
+
         /**
          * Returns the name(s) to match.
          *
@@ -185,7 +665,7 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
          * @return {@code true} if the head is a match.
          */
         public boolean isMatch(@NonNull SCMHead head) {
-            return isMatch(head.getName(), this.name);
+            return pattern.matches(head.getName());
         }
 
         /**
@@ -196,32 +676,7 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
          * @return {@code true} if and only if the branch name matches one of the name(s).
          */
         public static boolean isMatch(String branchName, String names) {
-            for (String name : StringUtils.split(names, ",")) {
-                name = name.trim();
-                boolean invertMatch;
-                if (name.startsWith("!")) {
-                    name = name.substring(1);
-                    invertMatch = true;
-                } else if (name.startsWith("\\!") || name.startsWith("\\\\!")) {
-                    // provide an escape hatch
-                    name = name.substring(1);
-                    invertMatch = false;
-                } else {
-                    invertMatch = false;
-                }
-                boolean match;
-                if (name.indexOf('*') == -1 && name.indexOf('?') == -1) {
-                    match = name.equalsIgnoreCase(branchName);
-                } else {
-                    name = name.replace('\\', File.separatorChar).replace('/', File.separatorChar);
-                    branchName = branchName.replace('\\', File.separatorChar).replace('/', File.separatorChar);
-                    match = SelectorUtils.matchPath(name, branchName, false);
-                }
-                if (invertMatch ? !match : match) {
-                    return true;
-                }
-            }
-            return false;
+            return BranchNamePattern.compile(names).matches(branchName);
         }
 
         /**
@@ -237,6 +692,32 @@ public class MultiNamedExceptionsBranchPropertyStrategy extends BranchPropertySt
             public String getDisplayName() {
                 return "Named exception";
             }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public Named newInstance(StaplerRequest2 req, @NonNull JSONObject formData) throws FormException {
+                Named named = super.newInstance(req, formData);
+                if (!named.pattern.isValid()) {
+                    throw new FormException(String.join(" ", named.pattern.getProblems()), "name");
+                }
+                return named;
+            }
+
+            /**
+             * Validates the name(s) to match.
+             *
+             * @param value the name(s) to match.
+             * @return the validation result.
+             */
+            public FormValidation doCheckName(@QueryParameter String value) {
+                BranchNamePattern pattern = BranchNamePattern.compile(Util.fixNull(value));
+                if (!pattern.isValid()) {
+                    return FormValidation.error(String.join(" ", pattern.getProblems()));
+                }
+                return FormValidation.ok();
+            }
         }
     }
 }
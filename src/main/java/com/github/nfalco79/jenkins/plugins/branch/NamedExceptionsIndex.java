@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.nfalco79.jenkins.plugins.branch.BranchNamePattern.Part;
+import com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.Named;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Index of the names of all exceptions of a strategy.
+ * <p>
+ * Literal names are looked up in a case insensitive hash table, glob names
+ * are grouped in a trie by the literal characters they start with so that
+ * only the globs sharing a prefix with the branch name are evaluated.
+ * Negated names can not be indexed and are always evaluated.
+ *
+ * @author Nikolas Falco
+ */
+final class NamedExceptionsIndex {
+
+    private static final int[] NO_IDS = new int[0];
+
+    /**
+     * Reference to a part of the exception at the given position.
+     */
+    private static final class Entry {
+        private final int id;
+        private final Part part;
+
+        private Entry(int id, Part part) {
+            this.id = id;
+            this.part = part;
+        }
+    }
+
+    /**
+     * Trie node keyed by the upper case characters of glob prefixes.
+     */
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<Entry> entries = new ArrayList<>();
+        private Entry[] compiled = new Entry[0];
+
+        private Node child(char c) {
+            return children.computeIfAbsent(c, k -> new Node());
+        }
+
+        private void compile() {
+            compiled = entries.toArray(new Entry[0]);
+            entries.clear();
+            children.values().forEach(Node::compile);
+        }
+    }
+
+    private final int size;
+    private final Map<String, int[]> literals = new HashMap<>();
+    private final Node globs = new Node();
+    private final Entry[] others;
+
+    /**
+     * Builds the index of the given exceptions, the position of each
+     * exception in the list is its identifier.
+     *
+     * @param namedExceptions the exceptions to index
+     */
+    NamedExceptionsIndex(@NonNull List<Named> namedExceptions) {
+        this.size = namedExceptions.size();
+        List<Entry> unindexed = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            for (Part part : namedExceptions.get(id).getPattern().getParts()) {
+                Entry entry = new Entry(id, part);
+                if (part.isNegated() || part.isNormalizingSeparators()) {
+                    unindexed.add(entry);
+                } else if (part.isLiteral()) {
+                    literals.merge(foldCase(part.getName()), new int[] { id }, NamedExceptionsIndex::concat);
+                } else {
+                    Node node = globs;
+                    String prefix = part.getLiteralPrefix();
+                    for (int i = 0; i < prefix.length(); i++) {
+                        node = node.child(Character.toUpperCase(prefix.charAt(i)));
+                    }
+                    node.entries.add(entry);
+                }
+            }
+        }
+        this.others = unindexed.toArray(new Entry[0]);
+        globs.compile();
+    }
+
+    /**
+     * Returns the position of all exceptions that match the given branch
+     * name.
+     *
+     * @param branchName the branch name
+     * @return the matching exception positions
+     */
+    @NonNull
+    BitSet matches(@NonNull String branchName) {
+        BitSet matches = new BitSet(size);
+        for (int id : literals.getOrDefault(foldCase(branchName), NO_IDS)) {
+            matches.set(id);
+        }
+
+        Node node = globs;
+        int i = 0;
+        while (node != null) {
+            for (Entry entry : node.compiled) {
+                if (!matches.get(entry.id) && entry.part.matches(branchName)) {
+                    matches.set(entry.id);
+                }
+            }
+            node = i < branchName.length() ? node.children.get(Character.toUpperCase(branchName.charAt(i++))) : null;
+        }
+
+        for (Entry entry : others) {
+            if (!matches.get(entry.id) && entry.part.matches(branchName)) {
+                matches.set(entry.id);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the position of the first exception that matches the given
+     * branch name, evaluating only the exceptions that precede the best match
+     * found so far.
+     *
+     * @param branchName the branch name
+     * @return the first matching exception position, {@code -1} if none
+     */
+    int firstMatch(@NonNull String branchName) {
+        int first = size;
+        int[] ids = literals.getOrDefault(foldCase(branchName), NO_IDS);
+        if (ids.length > 0) {
+            // ids are added in ascending order
+            first = ids[0];
+        }
+
+        Node node = globs;
+        int i = 0;
+        while (node != null) {
+            for (Entry entry : node.compiled) {
+                if (entry.id < first && entry.part.matches(branchName)) {
+                    first = entry.id;
+                }
+            }
+            node = i < branchName.length() ? node.children.get(Character.toUpperCase(branchName.charAt(i++))) : null;
+        }
+
+        for (Entry entry : others) {
+            if (entry.id >= first) {
+                // others are in ascending order
+                break;
+            }
+            if (entry.part.matches(branchName)) {
+                first = entry.id;
+                break;
+            }
+        }
+        return first < size ? first : -1;
+    }
+
+    /*
+     * Same folding used by String.equalsIgnoreCase.
+     */
+    private static String foldCase(String value) {
+        char[] chars = new char[value.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+        }
+        return new String(chars);
+    }
+
+    private static int[] concat(int[] ids, int[] other) {
+        int[] result = Arrays.copyOf(ids, ids.length + other.length);
+        System.arraycopy(other, 0, result, ids.length, other.length);
+        return result;
+    }
+}
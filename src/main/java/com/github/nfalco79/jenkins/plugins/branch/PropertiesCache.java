@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.branch.BranchProperty;
+
+/**
+ * Bounded cache of the properties resolved for a branch name.
+ * <p>
+ * Values are immutable lists shared between callers. When the cache is full
+ * an arbitrary entry is evicted to make room for the new one. Hits and
+ * misses are also added to the {@link BranchPropertyStrategyMetrics} of all
+ * strategies.
+ *
+ * @author Nikolas Falco
+ */
+final class PropertiesCache {
+
+    private final int maxSize;
+    private final ConcurrentMap<String, List<BranchProperty>> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    PropertiesCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the properties cached for the given branch name, resolving
+     * them if missing.
+     *
+     * @param branchName the branch name
+     * @param resolver function that resolves the properties of a branch name
+     * @return an immutable list of properties
+     */
+    @NonNull
+    List<BranchProperty> get(@NonNull String branchName, @NonNull Function<String, List<BranchProperty>> resolver) {
+        List<BranchProperty> properties = entries.get(branchName);
+        if (properties != null) {
+            hits.increment();
+            BranchPropertyStrategyMetrics.get().recordCacheHit();
+            return properties;
+        }
+        misses.increment();
+        BranchPropertyStrategyMetrics.get().recordCacheMiss();
+
+        properties = Collections.unmodifiableList(resolver.apply(branchName));
+        if (maxSize <= 0) {
+            return properties;
+        }
+        while (entries.size() >= maxSize) {
+            Iterator<String> it = entries.keySet().iterator();
+            if (!it.hasNext()) {
+                break;
+            }
+            it.next();
+            it.remove();
+        }
+        List<BranchProperty> previous = entries.putIfAbsent(branchName, properties);
+        return previous != null ? previous : properties;
+    }
+
+    /**
+     * Removes all cached entries.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
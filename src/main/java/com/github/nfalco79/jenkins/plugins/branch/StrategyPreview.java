@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.branch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.Named;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.branch.BranchProperty;
+import jenkins.util.SystemProperties;
+import net.sf.json.util.JSONUtils;
+
+/**
+ * Evaluates a not saved strategy against a list of branch names and writes
+ * the results as a JSON array.
+ * <p>
+ * Branch names are evaluated by a background thread that hands the results
+ * over a bounded queue, so that each result is written as soon as it is
+ * available and the whole response is never kept in memory. A failure during
+ * the evaluation is written as a last element with an {@code error} field,
+ * so that the response is always a valid JSON array.
+ *
+ * @author Nikolas Falco
+ */
+final class StrategyPreview {
+
+    private static final Logger LOGGER = Logger.getLogger(StrategyPreview.class.getName());
+
+    private static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * The maximum number of previews evaluated at the same time, the other
+     * requests wait for a free thread.
+     */
+    private static final int MAX_THREADS = SystemProperties.getInteger(StrategyPreview.class.getName() + ".maxThreads", 2);
+
+    /**
+     * The maximum number of previews waiting for a free thread.
+     */
+    private static final int MAX_WAITING = 16;
+
+    /**
+     * Marks the end of the results, no result is an empty string.
+     */
+    private static final String END = "";
+
+    private static final ExecutorService EXECUTOR = newExecutor();
+
+    private final MultiNamedExceptionsBranchPropertyStrategy strategy;
+
+    StrategyPreview(@NonNull MultiNamedExceptionsBranchPropertyStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /*
+     * The requests over the waiting previews block at submission, the
+     * request thread can not run a preview itself because it consumes the
+     * results.
+     */
+    private static ExecutorService newExecutor() {
+        int threads = Math.max(MAX_THREADS, 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_WAITING),
+                new NamingThreadFactory(new DaemonThreadFactory(), "MultiNamedExceptionsBranchPropertyStrategy.preview"),
+                (task, pool) -> {
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Evaluates each not blank line of the reader as a branch name.
+     *
+     * @param branchNames the branch names, one per line
+     * @param out where to write the results
+     * @throws IOException if the results can not be written
+     */
+    void write(@NonNull Reader branchNames, @NonNull Writer out) throws IOException {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicBoolean closed = new AtomicBoolean();
+        Future<?> producer;
+        try {
+            producer = EXECUTOR.submit(() -> {
+                evaluate(branchNames, queue, closed);
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            throw new InterruptedIOException();
+        }
+        try {
+            out.write('[');
+            String result;
+            boolean first = true;
+            while (!END.equals(result = next(queue, producer))) {
+                if (!first) {
+                    out.write(',');
+                }
+                out.write(result);
+                first = false;
+                if (queue.isEmpty()) {
+                    // nothing ready, let the client see what we have so far
+                    out.flush();
+                }
+            }
+            out.write(']');
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            // stops the producer if the client went away
+            closed.set(true);
+            producer.cancel(true);
+        }
+    }
+
+    /*
+     * Waits for the next result, failing if the producer stopped without
+     * the end marker.
+     */
+    private static String next(BlockingQueue<String> queue, Future<?> producer) throws IOException, InterruptedException {
+        String result;
+        while ((result = queue.poll(1, TimeUnit.SECONDS)) == null) {
+            if (producer.isDone()) {
+                result = queue.poll();
+                if (result != null) {
+                    return result;
+                }
+                try {
+                    producer.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                } catch (CancellationException e) {
+                    throw new IOException(e);
+                }
+                throw new IOException("The preview evaluation stopped without results");
+            }
+        }
+        return result;
+    }
+
+    private void evaluate(Reader branchNames, BlockingQueue<String> queue, AtomicBoolean closed) throws InterruptedException {
+        try (BufferedReader reader = new BufferedReader(branchNames)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String branchName = line.trim();
+                if (!branchName.isEmpty() && !offer(queue, toJSON(branchName), closed)) {
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // results are already streamed, the failure is the last element
+            LOGGER.log(Level.WARNING, "Failed to evaluate the strategy preview", e);
+            if (!offer(queue, toErrorJSON(e), closed)) {
+                return;
+            }
+        }
+        offer(queue, END, closed);
+    }
+
+    /*
+     * Hands an element to the request thread, gives up once the request is
+     * closed so that the producer never blocks on a full queue.
+     */
+    private static boolean offer(BlockingQueue<String> queue, String element, AtomicBoolean closed) throws InterruptedException {
+        while (!queue.offer(element, 1, TimeUnit.SECONDS)) {
+            if (closed.get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String toErrorJSON(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+        return "{\"error\":" + JSONUtils.quote(message) + "}";
+    }
+
+    private String toJSON(String branchName) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"name\":").append(JSONUtils.quote(branchName));
+
+        // the properties are derived from the exceptions, the name is matched once
+        List<Named> exceptions = strategy.getExceptionsFor(branchName);
+        json.append(",\"exceptions\":[");
+        String separator = "";
+        for (Named named : exceptions) {
+            json.append(separator).append(JSONUtils.quote(named.getName()));
+            separator = ",";
+        }
+
+        json.append("],\"properties\":[");
+        separator = "";
+        for (BranchProperty property : strategy.resolveProperties(exceptions)) {
+            json.append(separator) //
+                .append("{\"class\":").append(JSONUtils.quote(property.getClass().getName())) //
+                .append(",\"displayName\":").append(JSONUtils.quote(property.getDescriptor().getDisplayName())) //
+                .append('}');
+            separator = ",";
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.EnvVars;
+import hudson.model.ParameterValue;
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+
+/**
+ * A large text parameter which value is stored in a file of the build
+ * directory and read only when requested.
+ * <p>
+ * Only the first characters of the value are kept in memory and exported to
+ * the environment, so that neither the heap nor the environment of the
+ * processes grow with the value. The whole value is read from the file and
+ * exported on each environment request only when the
+ * {@code FileBackedParameterValue.exportFullValue} system property is set.
+ * The file is on the controller, its path is not exported because it does
+ * not exist on the agents.
+ * <p>
+ * A value uploaded with the request is written in a temporary file until
+ * the build starts, then it is moved in the build directory.
+ *
+ * @author Nikolas Falco
+ */
+@Restricted(NoExternalUse.class)
+public class FileBackedParameterValue extends ParameterValue {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(FileBackedParameterValue.class.getName());
+
+    /**
+     * If the environment gets the whole value read from the file instead of
+     * the in memory part of the value.
+     */
+    static final boolean EXPORT_FULL_VALUE = SystemProperties.getBoolean(FileBackedParameterValue.class.getName() + ".exportFullValue");
+
+    /**
+     * Path of the file relative to the build directory, {@code null} until
+     * an uploaded value is attached to a build.
+     */
+    private final String file;
+    /**
+     * Absolute path of the temporary file of an uploaded value not yet
+     * attached to a build.
+     */
+    private final String upload;
+    private final long length;
+    private final String preview;
+
+    /**
+     * The build directory, set once the value is attached to a build.
+     */
+    private transient File rootDir;
+
+    /**
+     * Writes the value in the given file of the build directory.
+     *
+     * @param run the build that owns the value
+     * @param file the file path relative to the build directory
+     * @param name the parameter name
+     * @param description the parameter description
+     * @param value the whole value
+     * @param previewLength how many characters of the value keep in memory
+     * @return the parameter value backed by the file
+     * @throws IOException if the file can not be written
+     */
+    @NonNull
+    static FileBackedParameterValue write(@NonNull Run<?, ?> run,
+                                          @NonNull String file,
+                                          @NonNull String name,
+                                          @CheckForNull String description,
+                                          @NonNull String value,
+                                          int previewLength) throws IOException {
+        File target = new File(run.getRootDir(), file);
+        Files.createDirectories(target.getParentFile().toPath());
+        try (Writer writer = Files.newBufferedWriter(target.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(value);
+        }
+
+        String preview = value.length() > previewLength ? value.substring(0, previewLength) : value;
+        FileBackedParameterValue parameter = new FileBackedParameterValue(name, description, file, null, value.length(), preview);
+        parameter.rootDir = run.getRootDir();
+        return parameter;
+    }
+
+    /**
+     * Copies the value from the given stream in a temporary file, only the
+     * first characters are kept in memory.
+     *
+     * @param name the parameter name
+     * @param description the parameter description
+     * @param content the UTF-8 encoded value
+     * @param previewLength how many characters of the value keep in memory
+     * @return the parameter value backed by the temporary file
+     * @throws IOException if the stream can not be read or the file can not
+     *         be written
+     */
+    @NonNull
+    static FileBackedParameterValue upload(@NonNull String name,
+                                           @CheckForNull String description,
+                                           @NonNull InputStream content,
+                                           int previewLength) throws IOException {
+        Path target = Files.createTempFile("parameter", ".txt");
+        StringBuilder preview = new StringBuilder();
+        long length = 0;
+        try (Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8);
+                Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+                if (preview.length() < previewLength) {
+                    preview.append(buffer, 0, Math.min(read, previewLength - preview.length()));
+                }
+                length += read;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        return new FileBackedParameterValue(name, description, null, target.toString(), length, preview.toString());
+    }
+
+    private FileBackedParameterValue(String name, String description, String file, String upload, long length, String preview) {
+        super(name, description);
+        this.file = file;
+        this.upload = upload;
+        this.length = length;
+        this.preview = preview;
+    }
+
+    /**
+     * Returns if the value is in a temporary file not yet attached to a
+     * build.
+     *
+     * @return {@code true} if the value was uploaded and must be attached
+     */
+    boolean isUploaded() {
+        return upload != null;
+    }
+
+    /**
+     * Moves an uploaded value in the given file of the build directory.
+     *
+     * @param run the build that owns the value
+     * @param file the file path relative to the build directory
+     * @return the parameter value backed by the file of the build
+     * @throws IOException if the file can not be moved
+     */
+    @NonNull
+    FileBackedParameterValue attach(@NonNull Run<?, ?> run, @NonNull String file) throws IOException {
+        File target = new File(run.getRootDir(), file);
+        Files.createDirectories(target.getParentFile().toPath());
+        Files.move(new File(upload).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        FileBackedParameterValue parameter = new FileBackedParameterValue(name, getDescription(), file, null, length, preview);
+        parameter.rootDir = run.getRootDir();
+        return parameter;
+    }
+
+    /**
+     * Binds the value to the directory of the build loaded from disk.
+     *
+     * @param run the build that owns the value
+     */
+    void onLoad(@NonNull Run<?, ?> run) {
+        this.rootDir = run.getRootDir();
+    }
+
+    /**
+     * Returns the number of characters of the whole value.
+     *
+     * @return the value length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the first characters of the value.
+     *
+     * @return the truncated value
+     */
+    @NonNull
+    public String getPreview() {
+        return preview;
+    }
+
+    /**
+     * Returns the file that contains the whole value.
+     *
+     * @return the value file, {@code null} if the value is not yet bound to
+     *         a build
+     */
+    @CheckForNull
+    public File getFile() {
+        if (upload != null) {
+            return new File(upload);
+        }
+        return rootDir != null ? new File(rootDir, file) : null;
+    }
+
+    /**
+     * Updates the given digest with the length and the content of the file
+     * without reading the whole value in memory.
+     *
+     * @param digest to update
+     * @throws IOException if the file can not be read
+     */
+    void digest(@NonNull MessageDigest digest) throws IOException {
+        digest.update((length + ":").getBytes(StandardCharsets.UTF_8));
+        File target = getFile();
+        if (target == null) {
+            digest.update(preview.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        try (InputStream content = Files.newInputStream(target.toPath())) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole value from the file, it is not cached.
+     *
+     * @return the value, or the truncated value if the file can not be read
+     */
+    @Override
+    public String getValue() {
+        File target = getFile();
+        if (target != null) {
+            try {
+                return Files.readString(target.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Can not read the value of parameter " + getName() + " from " + target, e);
+            }
+        }
+        return preview;
+    }
+
+    /**
+     * Returns the value exported to the environment, the first characters
+     * unless the whole value is exported.
+     *
+     * @return the environment value
+     */
+    @NonNull
+    public String getEnvironmentValue() {
+        return EXPORT_FULL_VALUE ? getValue() : preview;
+    }
+
+    @Override
+    public void buildEnvironment(Run<?, ?> build, EnvVars env) {
+        env.put(name, getEnvironmentValue());
+    }
+
+    @Override
+    public String getShortDescription() {
+        return name + "=" + preview + (length > preview.length() ? "..." : "");
+    }
+
+    @Override
+    public String toString() {
+        return "(FileBackedParameterValue) " + getName() + "='" + (upload != null ? upload : file) + "'";
+    }
+}
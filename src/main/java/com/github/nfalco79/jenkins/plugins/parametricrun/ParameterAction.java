@@ -17,11 +17,20 @@
 package com.github.nfalco79.jenkins.plugins.parametricrun;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.fileupload2.core.FileItem;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.HttpResponseException;
+import org.kohsuke.stapler.HttpResponses;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse2;
 import org.kohsuke.stapler.interceptor.RequirePOST;
@@ -39,10 +48,17 @@ import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
 import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
 import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
+import hudson.security.Permission;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletResponse;
+import jenkins.model.Jenkins;
 import jenkins.model.ParameterizedJobMixIn;
+import jenkins.util.SystemProperties;
 import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 
 /**
@@ -52,10 +68,55 @@ import net.sf.json.JSONObject;
  */
 public class ParameterAction implements Action {
 
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * The maximum number of parameter sets that can be scheduled by a single
+     * {@link #doSubmitMatrix(StaplerRequest2, StaplerResponse2)} request.
+     */
+    private static final int MAX_PARAMETER_SETS = SystemProperties.getInteger(ParameterAction.class.getName() + ".maxParameterSets", 100);
+
+    /**
+     * Lookup tables of the parameters accepted by the action, built from the
+     * action and job definitions.
+     */
+    private static final class ResolutionPlan {
+        /**
+         * The job property the plan was built from.
+         */
+        private final ParametersDefinitionProperty jobProperty;
+        private final List<ParameterDefinition> jobDefinitions;
+        /**
+         * All definitions by name, the action definitions take precedence
+         * over the job ones.
+         */
+        private final Map<String, ParameterDefinition> definitions = new LinkedHashMap<>();
+        private final ConcurrentMap<String, Descriptor<?>> descriptors = new ConcurrentHashMap<>();
+
+        private ResolutionPlan(List<ParameterDefinition> actionDefinitions, ParametersDefinitionProperty jobProperty) {
+            this.jobProperty = jobProperty;
+            this.jobDefinitions = jobProperty != null ? jobProperty.getParameterDefinitions() : Collections.<ParameterDefinition> emptyList();
+            for (ParameterDefinition definition : actionDefinitions) {
+                definitions.putIfAbsent(definition.getName(), definition);
+            }
+            for (ParameterDefinition definition : jobDefinitions) {
+                definitions.putIfAbsent(definition.getName(), definition);
+            }
+        }
+
+        private boolean isValid(ParametersDefinitionProperty jobProperty) {
+            return this.jobProperty == jobProperty
+                    && (jobProperty == null || jobDefinitions == jobProperty.getParameterDefinitions());
+        }
+    }
+
     private final String actionLabel;
     private final String badgeTemplate;
     private final List<ParameterDefinition> parameterDefinitions;
     protected final Job<?, ?> job;
+    private int quietPeriod;
+    private int maxConcurrentBuilds;
+    private transient volatile ResolutionPlan plan;
 
     public ParameterAction(Job<?, ?> job,
                            @NonNull String actionLabel,
@@ -76,7 +137,17 @@ public class ParameterAction implements Action {
     }
 
     protected boolean isActionEnabled() {
-        return this.job.isBuildable() && ParameterActionPermissionHelper.hasParametricRunPermission(job);
+        return this.job.isBuildable() && PermissionDecisionCache.get().hasPermission(job, getPermission());
+    }
+
+    /**
+     * Returns the permission required to use this action.
+     *
+     * @return the action permission
+     */
+    @NonNull
+    protected Permission getPermission() {
+        return ParameterActionPermissionHelper.PARAMETER_ACTION_PERMISSION;
     }
 
     /**
@@ -108,6 +179,22 @@ public class ParameterAction implements Action {
         return badgeTemplate;
     }
 
+    public int getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    void setQuietPeriod(int quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    public int getMaxConcurrentBuilds() {
+        return maxConcurrentBuilds;
+    }
+
+    void setMaxConcurrentBuilds(int maxConcurrentBuilds) {
+        this.maxConcurrentBuilds = maxConcurrentBuilds;
+    }
+
     /**
      * This method is invoked by the release page to schedule a new build.
      *
@@ -124,15 +211,197 @@ public class ParameterAction implements Action {
         request.bindParameters(this);
 
         // create parameter list
-        List<ParameterValue> paramValues = getDefaultParametersValues();
-
+        List<ParameterValue> paramValues;
         if (parameterDefinitions != null && !parameterDefinitions.isEmpty()) {
-            JSONObject formData = request.getSubmittedForm();
+            paramValues = bindParameters(request, request.getSubmittedForm());
+        } else {
+            paramValues = getDefaultParametersValues();
+        }
+        // only a valid request is accounted
+        checkRateLimit(1);
+
+        // schedule release build
+        if (scheduleBuild(paramValues) != null) {
+            // TODO redirect to error page?
+        }
+
+        // redirect to status page
+        response.sendRedirect(job.getAbsoluteUrl());
+    }
+
+    /**
+     * Schedules a build for each of the submitted parameter sets.
+     * <p>
+     * The request is a JSON object, posted as body or as {@code json} form
+     * field, with a {@code parameterSets} array where each element has the
+     * same {@code parameter} array submitted by the action form. All sets are
+     * validated before the requests are accounted to the rate limit and any
+     * build is scheduled. The response is a JSON array with an element for
+     * each set, with the {@code status} of the set and the {@code id} and
+     * {@code url} of the queue item when created or the {@code message}
+     * explaining why the build was not scheduled.
+     *
+     * @param request HTTP with the parameter sets
+     * @param response HTTP to return
+     * @throws IOException
+     * @throws ServletException
+     */
+    @RequirePOST
+    public void doSubmitMatrix(StaplerRequest2 request, StaplerResponse2 response) throws IOException, ServletException {
+        verifyPermission();
 
-            JSONArray a = JSONArray.fromObject(formData.get("parameter"));
+        List<List<ParameterValue>> matrix = new ArrayList<>();
+        try {
+            Object parameterSets = getSubmittedJSON(request).get("parameterSets");
+            if (parameterSets == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.ParameterAction_noParameterSets());
+                return;
+            }
+            JSONArray sets = JSONArray.fromObject(parameterSets);
+            if (sets.size() > MAX_PARAMETER_SETS) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.ParameterAction_tooManyParameterSets(MAX_PARAMETER_SETS));
+                return;
+            }
+            for (int i = 0; i < sets.size(); i++) {
+                try {
+                    matrix.add(bindParameters(request, toJSONObject(sets.get(i))));
+                } catch (IllegalArgumentException | JSONException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.ParameterAction_invalidParameterSet(i + 1, e.getMessage()));
+                    return;
+                }
+            }
+        } catch (JSONException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        // only a valid request is accounted
+        checkRateLimit(matrix.size());
+
+        JSONArray items = new JSONArray();
+        for (List<ParameterValue> paramValues : matrix) {
+            JSONObject jsonItem = new JSONObject();
+            try {
+                Queue.Item item = scheduleBuild(paramValues);
+                if (item != null) {
+                    jsonItem.put("status", HttpServletResponse.SC_CREATED);
+                    jsonItem.put("id", item.getId());
+                    jsonItem.put("url", item.getUrl());
+                } else {
+                    jsonItem.put("status", HttpServletResponse.SC_CONFLICT);
+                    jsonItem.put("message", Messages.ParameterAction_notScheduled(job.getFullDisplayName()));
+                }
+            } catch (HttpResponseException e) {
+                // limit of concurrent builds reached
+                jsonItem.put("status", HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                jsonItem.put("message", Messages.ParameterAction_tooManyBuilds(maxConcurrentBuilds, job.getFullDisplayName()));
+            }
+            items.add(jsonItem);
+        }
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().print(items.toString());
+    }
+
+    /**
+     * Schedules a build with the parameters given as a flat map, for scripts
+     * that do not want to submit the action form.
+     * <p>
+     * Parameters are read from a JSON object posted as body, where each key
+     * is a parameter name, or from the request parameters as done by
+     * {@code buildWithParameters}. In a {@code multipart/form-data} request
+     * the part of a string or text parameter is streamed to a file, so that
+     * large values are never read in memory. Parameters not given get their
+     * default value. The response is {@code 201} with the location of the
+     * queue item.
+     *
+     * @param request HTTP with the parameters
+     * @param response HTTP to return
+     * @throws IOException
+     * @throws ServletException
+     */
+    @RequirePOST
+    public void doBuildWithParameters(StaplerRequest2 request, StaplerResponse2 response) throws IOException, ServletException {
+        verifyPermission();
+
+        List<ParameterValue> paramValues;
+        try {
+            paramValues = bindParameterMap(request);
+        } catch (JSONException | IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        // only a valid request is accounted
+        checkRateLimit(1);
 
-            for (Object o : a) {
-                JSONObject jo = (JSONObject) o;
+        Queue.Item item = scheduleBuild(paramValues);
+        if (item == null) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, Messages.ParameterAction_notScheduled(job.getFullDisplayName()));
+            return;
+        }
+        response.sendRedirect(HttpServletResponse.SC_CREATED, request.getContextPath() + '/' + item.getUrl());
+    }
+
+    /*
+     * Binds all definitions from a flat map of parameter names and values.
+     */
+    private List<ParameterValue> bindParameterMap(StaplerRequest2 request) throws IOException, ServletException {
+        boolean multipart = isMultipartRequest(request);
+        JSONObject json = null;
+        if (isJSONRequest(request)) {
+            json = JSONObject.fromObject(IOUtils.toString(request.getReader()));
+            for (Object name : json.keySet()) {
+                if (getParameterDefinition((String) name) == null) {
+                    throw new IllegalArgumentException("No such parameter definition: " + name);
+                }
+            }
+        }
+
+        List<ParameterValue> paramValues = new ArrayList<>();
+        for (ParameterDefinition paramDefinition : getResolutionPlan().definitions.values()) {
+            String name = paramDefinition.getName();
+            ParameterValue paramValue;
+            FileItem item = multipart && paramDefinition instanceof StringParameterDefinition ? request.getFileItem2(name) : null;
+            if (item != null) {
+                // streamed to disk, never read whole in memory
+                try (InputStream content = item.getInputStream()) {
+                    paramValue = FileBackedParameterValue.upload(name, paramDefinition.getDescription(), content, SafeParametersAction.PREVIEW_LENGTH);
+                }
+            } else if (json == null) {
+                paramValue = paramDefinition.createValue(request);
+            } else if (json.containsKey(name)) {
+                // same structure submitted by the parameter value pages
+                JSONObject jo = new JSONObject();
+                jo.put("name", name);
+                jo.put("value", json.get(name));
+                paramValue = paramDefinition.createValue(request, jo);
+            } else {
+                paramValue = paramDefinition.getDefaultParameterValue();
+            }
+            if (paramValue != null) {
+                paramValues.add(paramValue);
+            }
+        }
+        return paramValues;
+    }
+
+    /**
+     * Returns the values of the job parameters with a default and of the
+     * given parameters submitted to this action.
+     *
+     * @param request the current request
+     * @param formData the submitted data with the {@code parameter} array
+     * @return the parameter values of the build
+     * @throws IllegalArgumentException if one of the submitted parameter is
+     *         not defined
+     */
+    @NonNull
+    protected List<ParameterValue> bindParameters(@NonNull StaplerRequest2 request, @NonNull JSONObject formData) {
+        List<ParameterValue> paramValues = getDefaultParametersValues();
+
+        Object parameters = formData.get("parameter");
+        if (parameters != null) {
+            for (Object o : JSONArray.fromObject(parameters)) {
+                JSONObject jo = toJSONObject(o);
                 String name = jo.getString("name");
 
                 ParameterDefinition paramDefinition = getParameterDefinition(name);
@@ -146,18 +415,113 @@ public class ParameterAction implements Action {
                 }
             }
         }
+        return paramValues;
+    }
 
-        // schedule release build
-        if (ParameterizedJobMixIn.scheduleBuild2(getJob(), 0, buildAction(paramValues)) != null) {
-            // TODO redirect to error page?
+    /**
+     * Schedules a build of the job with the given parameters.
+     *
+     * @param paramValues the build parameters
+     * @return the queue item, {@code null} if the build was not scheduled
+     * @throws HttpResponseException with status {@code 503} if the maximum
+     *         number of concurrent builds is reached
+     */
+    @CheckForNull
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected Queue.Item scheduleBuild(@NonNull List<ParameterValue> paramValues) {
+        if (!(job instanceof ParameterizedJobMixIn.ParameterizedJob)) {
+            return null;
         }
 
-        // redirect to status page
-        response.sendRedirect(job.getAbsoluteUrl());
+        ParametricBuildAdmission admission = ParametricBuildAdmission.get();
+        String jobName = job.getFullName();
+        if (maxConcurrentBuilds > 0 && !admission.tryAcquire(jobName, maxConcurrentBuilds)) {
+            throw HttpResponses.error(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    Messages.ParameterAction_tooManyBuilds(maxConcurrentBuilds, job.getFullDisplayName()));
+        }
+
+        Queue.Item item = null;
+        try {
+            item = new ParameterizedJobMixIn() {
+                @Override
+                protected Job asJob() {
+                    return job;
+                }
+            }.scheduleBuild2(quietPeriod, Arrays.asList(buildAction(paramValues)));
+        } finally {
+            if (maxConcurrentBuilds > 0) {
+                if (item != null) {
+                    admission.bind(jobName, item.getId());
+                } else {
+                    admission.release(jobName);
+                }
+            }
+        }
+        return item;
+    }
+
+    private static JSONObject toJSONObject(Object o) {
+        if (!(o instanceof JSONObject) || ((JSONObject) o).isNullObject()) {
+            throw new IllegalArgumentException(Messages.ParameterAction_notAnObject(o));
+        }
+        return (JSONObject) o;
+    }
+
+    /*
+     * Returns the submitted form or the request body when it is JSON.
+     */
+    private static JSONObject getSubmittedJSON(StaplerRequest2 request) throws IOException, ServletException {
+        if (isJSONRequest(request)) {
+            return JSONObject.fromObject(IOUtils.toString(request.getReader()));
+        }
+        return request.getSubmittedForm();
+    }
+
+    private static boolean isJSONRequest(StaplerRequest2 request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.startsWith("application/json");
+    }
+
+    private static boolean isMultipartRequest(StaplerRequest2 request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.startsWith("multipart/form-data");
     }
 
     protected void verifyPermission() {
-        ParameterActionPermissionHelper.checkParametricRunPermission(job);
+        job.checkPermission(getPermission());
+    }
+
+    /**
+     * Accounts the given number of build requests of the current user to
+     * this kind of action.
+     *
+     * @param requests the number of requested builds
+     * @throws HttpResponseException with status {@code 429} if the user
+     *         exceeded the rate limit, {@code 413} if the requests are more
+     *         than the rate limit allows in a period
+     */
+    protected void checkRateLimit(int requests) {
+        ParametricRunConfiguration config = ParametricRunConfiguration.get();
+        if (config.getRateLimit() <= 0) {
+            return;
+        }
+        if (requests > config.getRateLimit()) {
+            // retrying would never help
+            throw HttpResponses.error(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    Messages.ParameterAction_overRateLimit(config.getRateLimit(), config.getRateLimitPeriod()));
+        }
+
+        String user = Jenkins.getAuthentication2().getName();
+        long retryAfter = ParametricRunRateLimiter.get().tryAcquire(getClass(), user, requests, config.getRateLimit(), config.getRateLimitPeriod());
+        if (retryAfter > 0) {
+            throw new HttpResponseException() {
+                @Override
+                public void generateResponse(StaplerRequest2 req, StaplerResponse2 rsp, Object node) throws IOException, ServletException {
+                    rsp.setHeader("Retry-After", Long.toString(retryAfter));
+                    rsp.sendError(SC_TOO_MANY_REQUESTS, Messages.ParameterAction_rateLimited(retryAfter));
+                }
+            };
+        }
     }
 
     protected Action[] buildAction(List<ParameterValue> paramValues) {
@@ -167,19 +531,10 @@ public class ParameterAction implements Action {
     }
 
     private List<ParameterValue> getDefaultParametersValues() {
-        ParametersDefinitionProperty paramDefProp = job.getProperty(ParametersDefinitionProperty.class);
         ArrayList<ParameterValue> defValues = new ArrayList<>();
 
-        /*
-         * This check is made ONLY if someone will call this method even if
-         * isParametrized() is false.
-         */
-        if (paramDefProp == null) {
-            return defValues;
-        }
-
         /* Scan for all parameter with an associated default values */
-        for (ParameterDefinition paramDefinition : paramDefProp.getParameterDefinitions()) {
+        for (ParameterDefinition paramDefinition : getResolutionPlan().jobDefinitions) {
             ParameterValue defaultValue = paramDefinition.getDefaultParameterValue();
 
             if (defaultValue != null) {
@@ -190,6 +545,20 @@ public class ParameterAction implements Action {
         return defValues;
     }
 
+    /*
+     * Returns the lookup tables of the parameters, rebuilt when the job
+     * parameters change.
+     */
+    private ResolutionPlan getResolutionPlan() {
+        ParametersDefinitionProperty jobProperty = job.getProperty(ParametersDefinitionProperty.class);
+        ResolutionPlan current = plan;
+        if (current == null || !current.isValid(jobProperty)) {
+            current = new ResolutionPlan(parameterDefinitions, jobProperty);
+            plan = current;
+        }
+        return current;
+    }
+
     /**
      * Returns all build parameter defined for the specified run.
      *
@@ -215,20 +584,7 @@ public class ParameterAction implements Action {
      */
     @Nullable
     public ParameterDefinition getParameterDefinition(String name) {
-        ParametersDefinitionProperty buildParamsDefProp = job.getProperty(ParametersDefinitionProperty.class);
-
-        List<ParameterDefinition> buildParameterDefinitions = new LinkedList<>(parameterDefinitions);
-        if (buildParamsDefProp != null) {
-            buildParameterDefinitions.addAll(buildParamsDefProp.getParameterDefinitions());
-        }
-
-        for (ParameterDefinition pd : buildParameterDefinitions) {
-            if (pd.getName().equals(name)) {
-                return pd;
-            }
-        }
-
-        return null;
+        return getResolutionPlan().definitions.get(name);
     }
 
     /**
@@ -239,7 +595,7 @@ public class ParameterAction implements Action {
      * @return the requested descriptor
      */
     public Descriptor<?> getDescriptorByName(String className) {
-        return job.getDescriptorByName(className);
+        return getResolutionPlan().descriptors.computeIfAbsent(className, job::getDescriptorByName);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import jenkins.branch.Branch;
+import jenkins.branch.BranchProjectFactory;
+import jenkins.branch.BranchProperty;
+import jenkins.branch.MultiBranchProject;
+import jenkins.model.TransientActionFactory;
+
+/**
+ * Contributes the actions of the {@link ParameterBranchProperty} configured
+ * to be created on demand.
+ * <p>
+ * Actions are built from the properties resolved for the branch each time
+ * the job actions are requested, so they are never persisted by the branch
+ * job and no action is kept in memory for the branches nobody looks at.
+ *
+ * @author Nikolas Falco
+ */
+@SuppressWarnings("rawtypes")
+@Extension
+public class ParameterActionFactory extends TransientActionFactory<Job> {
+
+    @Override
+    public Class<Job> type() {
+        return Job.class;
+    }
+
+    @Override
+    public Class<? extends Action> actionType() {
+        return ParameterAction.class;
+    }
+
+    @NonNull
+    @Override
+    public Collection<? extends Action> createFor(@NonNull Job target) {
+        Branch branch = getBranch(target);
+        if (branch == null) {
+            return Collections.emptyList();
+        }
+
+        List<Action> actions = new ArrayList<>();
+        for (BranchProperty property : branch.getProperties()) {
+            if (property instanceof ParameterBranchProperty) {
+                ParameterBranchProperty parameterProperty = (ParameterBranchProperty) property;
+                if (parameterProperty.isLazyAction()) {
+                    actions.add(parameterProperty.createAction(target));
+                }
+            }
+        }
+        return actions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Branch getBranch(Job<?, ?> job) {
+        ItemGroup<?> parent = job.getParent();
+        if (!(parent instanceof MultiBranchProject)) {
+            return null;
+        }
+        BranchProjectFactory factory = ((MultiBranchProject) parent).getProjectFactory();
+        if (!factory.isProject(job)) {
+            return null;
+        }
+        return factory.getBranch(factory.asProject(job));
+    }
+}
@@ -16,8 +16,11 @@
  */
 package com.github.nfalco79.jenkins.plugins.parametricrun;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -44,7 +47,10 @@ public class ParameterBranchProperty extends BranchProperty {
     private final String actionLabel;
     private final boolean useBadge;
     private final String badgeTemplate;
-    private List<ParameterDefinition> parameterDefinitions;
+    private volatile List<ParameterDefinition> parameterDefinitions;
+    private boolean lazyAction;
+    private int quietPeriod;
+    private int maxConcurrentBuilds;
 
     @DataBoundConstructor
     public ParameterBranchProperty(@NonNull String actionLabel, //
@@ -81,20 +87,169 @@ public class ParameterBranchProperty extends BranchProperty {
      */
     @DataBoundSetter
     public void setParameterDefinitions(List<ParameterDefinition> parameterDefinitions) {
-        this.parameterDefinitions = parameterDefinitions != null ? parameterDefinitions : Collections.<ParameterDefinition> emptyList();
+        // copy so that the list can not change once published to other threads
+        this.parameterDefinitions = parameterDefinitions != null
+                ? new ArrayList<>(parameterDefinitions)
+                : Collections.<ParameterDefinition> emptyList();
     }
 
     public String getActionLabel() {
         return actionLabel;
     }
 
+    public boolean isLazyAction() {
+        return lazyAction;
+    }
+
+    /**
+     * Sets if the action is not attached to the job but created on demand by
+     * {@link ParameterActionFactory}.
+     *
+     * @param lazyAction {@code true} to create the action on demand
+     */
+    @DataBoundSetter
+    public void setLazyAction(boolean lazyAction) {
+        this.lazyAction = lazyAction;
+    }
+
+    public int getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Sets the quiet period, in seconds, of the builds requested through the
+     * action.
+     *
+     * @param quietPeriod the quiet period in seconds, {@code 0} to start the
+     *        build immediately
+     */
+    @DataBoundSetter
+    public void setQuietPeriod(int quietPeriod) {
+        this.quietPeriod = Math.max(quietPeriod, 0);
+    }
+
+    public int getMaxConcurrentBuilds() {
+        return maxConcurrentBuilds;
+    }
+
+    /**
+     * Sets how many builds requested through the action can be queued or
+     * running at the same time for a branch job, the requests over the limit
+     * are rejected.
+     *
+     * @param maxConcurrentBuilds the maximum number of builds, {@code 0} for
+     *        no limit
+     */
+    @DataBoundSetter
+    public void setMaxConcurrentBuilds(int maxConcurrentBuilds) {
+        this.maxConcurrentBuilds = Math.max(maxConcurrentBuilds, 0);
+    }
+
+    /**
+     * Combines this property with another of the same type matched by the
+     * same branch.
+     * <p>
+     * The result has the settings of this property and the parameter
+     * definitions of both, when the same parameter name is defined twice the
+     * definition of this property wins.
+     *
+     * @param other the property to merge with this
+     * @return a new property of the same type
+     */
+    @NonNull
+    public ParameterBranchProperty merge(@NonNull ParameterBranchProperty other) {
+        if (other.getClass() != getClass()) {
+            throw new IllegalArgumentException("Can not merge " + getClass().getName() + " with " + other.getClass().getName());
+        }
+
+        Map<String, ParameterDefinition> definitions = new LinkedHashMap<>();
+        for (ParameterDefinition definition : Util.fixNull(getParameterDefinitions())) {
+            definitions.putIfAbsent(definition.getName(), definition);
+        }
+        for (ParameterDefinition definition : Util.fixNull(other.getParameterDefinitions())) {
+            definitions.putIfAbsent(definition.getName(), definition);
+        }
+
+        ParameterBranchProperty merged = copy();
+        if (merged.getClass() != getClass()) {
+            // a subclass of a subclass that does not override copy()
+            throw new IllegalStateException(getClass().getName() + " must override copy() to return its own type");
+        }
+        merged.lazyAction = lazyAction;
+        merged.quietPeriod = quietPeriod;
+        merged.maxConcurrentBuilds = maxConcurrentBuilds;
+        merged.setParameterDefinitions(new ArrayList<>(definitions.values()));
+        return merged;
+    }
+
+    /**
+     * Returns a new property built with the same constructor arguments of
+     * this, subclasses must override to return their own type.
+     *
+     * @return a new property
+     * @throws IllegalStateException if a subclass does not override this
+     *         method
+     */
+    @NonNull
+    protected ParameterBranchProperty copy() {
+        if (getClass() != ParameterBranchProperty.class) {
+            throw new IllegalStateException(getClass().getName() + " must override copy() to return its own type");
+        }
+        return new ParameterBranchProperty(actionLabel, useBadge, badgeTemplate);
+    }
+
+    /**
+     * Creates the action contributed by this property to the given job.
+     *
+     * @param job the branch job
+     * @return a new action
+     */
+    @NonNull
+    public final ParameterAction createAction(@NonNull Job<?, ?> job) {
+        ParameterAction action = newAction(job);
+        action.setQuietPeriod(quietPeriod);
+        action.setMaxConcurrentBuilds(maxConcurrentBuilds);
+        return action;
+    }
+
+    /**
+     * Instantiates the action of this property, subclasses must override to
+     * return their own type.
+     *
+     * @param job the branch job
+     * @return a new action
+     */
+    @NonNull
+    protected ParameterAction newAction(@NonNull Job<?, ?> job) {
+        return new ParameterAction(job, getActionLabel(), getBadgeTemplate(), getParameterDefinitions());
+    }
+
+    /**
+     * Returns the type of action created by {@link #newAction(Job)}.
+     *
+     * @return the action type
+     */
+    @NonNull
+    protected Class<? extends ParameterAction> getActionType() {
+        return ParameterAction.class;
+    }
+
     @Override
     public <P extends Job<P, B>, B extends Run<P, B>> JobDecorator<P, B> jobDecorator(Class<P> clazz) {
         return new JobDecorator<P, B>() {
 
             @Override
             public P project(P project) {
-                project.replaceAction(new ParameterAction(project, getActionLabel(), getBadgeTemplate(), getParameterDefinitions()));
+                if (isLazyAction()) {
+                    // drop the action attached before switching to on demand mode
+                    for (ParameterAction action : project.getActions(ParameterAction.class)) {
+                        if (action.getClass() == getActionType()) {
+                            project.removeAction(action);
+                        }
+                    }
+                } else {
+                    project.replaceAction(createAction(project));
+                }
                 return super.project(project);
             }
         };
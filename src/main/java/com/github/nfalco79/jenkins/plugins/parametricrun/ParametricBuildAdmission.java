@@ -0,0 +1,248 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.QueueListener;
+import jenkins.model.Jenkins;
+
+/**
+ * Counts the parametric builds queued or running for each job, to limit how
+ * many of them can be requested at the same time.
+ * <p>
+ * A slot is reserved before the build is scheduled and it is bound to the
+ * queue item, then released when the build completes or the item is
+ * cancelled. Counters are updated with compare and set so the queue is never
+ * scanned nor locked on a request. Counters do not survive a restart, they
+ * are rebuilt from the queue and the running builds once all jobs are
+ * loaded.
+ *
+ * @author Nikolas Falco
+ */
+@Restricted(NoExternalUse.class)
+public final class ParametricBuildAdmission {
+
+    private static final ParametricBuildAdmission INSTANCE = new ParametricBuildAdmission();
+
+    /**
+     * Reserved slots by job full name.
+     */
+    private final ConcurrentMap<String, AtomicInteger> reservations = new ConcurrentHashMap<>();
+
+    /**
+     * The job full name of each queue item that holds a slot.
+     */
+    private final ConcurrentMap<Long, String> items = new ConcurrentHashMap<>();
+
+    private ParametricBuildAdmission() {
+    }
+
+    @NonNull
+    public static ParametricBuildAdmission get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reserves a slot for a new build of the given job.
+     *
+     * @param jobName the job full name
+     * @param maxBuilds the maximum number of builds queued or running
+     * @return {@code true} if the slot was reserved, {@code false} if the
+     *         limit is reached
+     */
+    boolean tryAcquire(@NonNull String jobName, int maxBuilds) {
+        AtomicInteger counter = reservations.computeIfAbsent(jobName, k -> new AtomicInteger());
+        while (true) {
+            int current = counter.get();
+            if (current >= maxBuilds) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Binds a reserved slot to the queue item scheduled for it. If the item
+     * already holds a slot, because the request was merged in a pending
+     * item, the reservation is released.
+     *
+     * @param jobName the job full name
+     * @param itemId the queue item identifier
+     */
+    void bind(@NonNull String jobName, long itemId) {
+        if (items.putIfAbsent(itemId, jobName) != null) {
+            release(jobName);
+        } else if (!isPending(itemId)) {
+            // the item left the queue before it was bound, the listeners did
+            // not find it
+            releaseItem(itemId);
+        }
+    }
+
+    /*
+     * Returns if the item is still queued or its build is not completed.
+     */
+    private static boolean isPending(long itemId) {
+        Queue.Item item = Queue.getInstance().getItem(itemId);
+        if (item instanceof Queue.LeftItem) {
+            Queue.LeftItem leftItem = (Queue.LeftItem) item;
+            if (leftItem.isCancelled()) {
+                return false;
+            }
+            Queue.Executable executable = leftItem.getExecutable();
+            return !(executable instanceof Run) || ((Run<?, ?>) executable).isLogUpdated();
+        }
+        return item != null;
+    }
+
+    /**
+     * Releases a slot reserved by {@link #tryAcquire(String, int)}.
+     *
+     * @param jobName the job full name
+     */
+    void release(@NonNull String jobName) {
+        AtomicInteger counter = reservations.get(jobName);
+        if (counter != null) {
+            counter.updateAndGet(current -> current > 0 ? current - 1 : 0);
+        }
+    }
+
+    /**
+     * Returns the number of builds of the given job that hold a slot.
+     *
+     * @param jobName the job full name
+     * @return the number of reserved slots
+     */
+    public int getReserved(@NonNull String jobName) {
+        AtomicInteger counter = reservations.get(jobName);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * Replaces the counters with the parametric builds found in the queue and
+     * on the executors.
+     */
+    synchronized void rebuild() {
+        Map<Long, String> bound = new HashMap<>();
+        for (Queue.Item item : Queue.getInstance().getItems()) {
+            if (item.task instanceof Job && item.getAction(SafeParametersAction.class) != null) {
+                bound.put(item.getId(), ((Job<?, ?>) item.task).getFullName());
+            }
+        }
+        for (Computer computer : Jenkins.get().getComputers()) {
+            for (Executor executor : computer.getAllExecutors()) {
+                Queue.Executable executable = executor.getCurrentExecutable();
+                if (executable instanceof Run) {
+                    Run<?, ?> run = (Run<?, ?>) executable;
+                    if (run.getAction(SafeParametersAction.class) != null) {
+                        bound.put(run.getQueueId(), run.getParent().getFullName());
+                    }
+                }
+            }
+        }
+
+        items.clear();
+        reservations.clear();
+        bound.forEach((itemId, jobName) -> {
+            items.put(itemId, jobName);
+            reservations.computeIfAbsent(jobName, k -> new AtomicInteger()).incrementAndGet();
+        });
+    }
+
+    /*
+     * Moves the slots of a job that was renamed or moved.
+     */
+    private synchronized void rename(String oldName, String newName) {
+        AtomicInteger counter = reservations.remove(oldName);
+        if (counter != null) {
+            reservations.merge(newName, counter, (current, moved) -> {
+                current.addAndGet(moved.get());
+                return current;
+            });
+        }
+        items.replaceAll((itemId, jobName) -> jobName.equals(oldName) ? newName : jobName);
+    }
+
+    private void releaseItem(long itemId) {
+        String jobName = items.remove(itemId);
+        if (jobName != null) {
+            release(jobName);
+        }
+    }
+
+    /**
+     * Releases the slot when the build is completed.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            get().releaseItem(run.getQueueId());
+        }
+    }
+
+    /**
+     * Rebuilds the counters at startup and follows the renamed jobs.
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onLoaded() {
+            get().rebuild();
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof Job) {
+                get().rename(oldFullName, newFullName);
+            }
+        }
+    }
+
+    /**
+     * Releases the slot when the queue item is cancelled before start.
+     */
+    @Extension
+    public static class QueueListenerImpl extends QueueListener {
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            if (li.isCancelled()) {
+                get().releaseItem(li.getId());
+            }
+        }
+    }
+}
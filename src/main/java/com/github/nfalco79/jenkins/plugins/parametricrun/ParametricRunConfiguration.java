@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.model.GlobalConfiguration;
+
+/**
+ * Global settings of the parametric actions.
+ *
+ * @author Nikolas Falco
+ */
+@Extension
+@Symbol("parametricRun")
+public class ParametricRunConfiguration extends GlobalConfiguration {
+
+    private static final int DEFAULT_RATE_LIMIT_PERIOD = 60;
+
+    private int rateLimit;
+    private int rateLimitPeriod = DEFAULT_RATE_LIMIT_PERIOD;
+
+    public ParametricRunConfiguration() {
+        load();
+    }
+
+    /**
+     * Returns the global configuration.
+     *
+     * @return the singleton instance
+     */
+    @NonNull
+    public static ParametricRunConfiguration get() {
+        return ExtensionList.lookupSingleton(ParametricRunConfiguration.class);
+    }
+
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Sets how many builds each user can request through a kind of
+     * parametric action in the rate limit period.
+     *
+     * @param rateLimit the number of requests, {@code 0} for no limit
+     */
+    @DataBoundSetter
+    public void setRateLimit(int rateLimit) {
+        this.rateLimit = Math.max(rateLimit, 0);
+        save();
+    }
+
+    public int getRateLimitPeriod() {
+        return rateLimitPeriod;
+    }
+
+    /**
+     * Sets the period of the rate limit.
+     *
+     * @param rateLimitPeriod the period in seconds
+     */
+    @DataBoundSetter
+    public void setRateLimitPeriod(int rateLimitPeriod) {
+        this.rateLimitPeriod = rateLimitPeriod > 0 ? rateLimitPeriod : DEFAULT_RATE_LIMIT_PERIOD;
+        save();
+    }
+}
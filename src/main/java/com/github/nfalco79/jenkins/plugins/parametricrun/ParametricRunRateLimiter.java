@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+
+/**
+ * Limits the rate of the requests of each user to each kind of parametric
+ * action.
+ * <p>
+ * Implements the generic cell rate algorithm, equivalent to a token bucket
+ * where the state of each user is the theoretical arrival time of the next
+ * request. State is a single {@link AtomicLong} updated with compare and set
+ * inside concurrent maps, so requests of different users never contend and
+ * nothing is allocated once a user is known. Idle users are purged
+ * periodically out of the request threads.
+ *
+ * @author Nikolas Falco
+ */
+public final class ParametricRunRateLimiter {
+
+    private static final ParametricRunRateLimiter INSTANCE = new ParametricRunRateLimiter(System::nanoTime);
+
+    /**
+     * Theoretical arrival time by action type and user.
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, AtomicLong>> arrivals = new ConcurrentHashMap<>();
+
+    private final LongSupplier nanoTime;
+
+    ParametricRunRateLimiter(@NonNull LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    @NonNull
+    static ParametricRunRateLimiter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Accounts the given number of requests of a user to an action type.
+     *
+     * @param actionType the action type
+     * @param user the user identifier
+     * @param requests the number of requests
+     * @param limit the maximum number of requests in a period
+     * @param periodSeconds the period in seconds
+     * @return {@code 0} if the requests are allowed, otherwise the number of
+     *         seconds to wait before retrying
+     * @throws IllegalArgumentException if the requests are more than the
+     *         limit, they would never be allowed
+     */
+    long tryAcquire(@NonNull Class<?> actionType, @NonNull String user, int requests, int limit, int periodSeconds) {
+        if (requests > limit) {
+            throw new IllegalArgumentException("Requests " + requests + " exceed the limit of " + limit);
+        }
+        long period = TimeUnit.SECONDS.toNanos(periodSeconds);
+        long interval = period / limit;
+        long cost = interval * requests;
+
+        ConcurrentMap<String, AtomicLong> users = arrivals.computeIfAbsent(actionType, k -> new ConcurrentHashMap<>());
+        AtomicLong arrival = users.computeIfAbsent(user, k -> new AtomicLong(nanoTime.getAsLong()));
+
+        while (true) {
+            long now = nanoTime.getAsLong();
+            long current = arrival.get();
+            long tat = current - now < 0 ? now : current;
+            long next = tat + cost;
+            long wait = next - now - period;
+            if (wait > 0) {
+                // round up, retrying before would be refused again
+                return Math.max(TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1), 1);
+            }
+            if (arrival.compareAndSet(current, next)) {
+                // a purge may have dropped the idle entry while it was
+                // updated, the update must not be lost
+                AtomicLong registered = users.get(user);
+                if (registered == null) {
+                    registered = users.putIfAbsent(user, arrival);
+                }
+                if (registered == null || registered == arrival) {
+                    return 0;
+                }
+                // a newer entry wins, account the requests on it
+                arrival = registered;
+            }
+        }
+    }
+
+    /**
+     * Removes the idle entries of all action types.
+     */
+    void purge() {
+        arrivals.values().forEach(this::purge);
+    }
+
+    /*
+     * Removes the users that have no pending requests, their state is
+     * equivalent to a missing entry.
+     */
+    private void purge(ConcurrentMap<String, AtomicLong> users) {
+        long now = nanoTime.getAsLong();
+        users.values().removeIf(arrival -> arrival.get() - now < 0);
+    }
+
+    /**
+     * Purges the idle users every ten minutes.
+     */
+    @Extension
+    public static class PurgeWork extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() {
+            return 10 * MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            ParametricRunRateLimiter.get().purge();
+        }
+    }
+}
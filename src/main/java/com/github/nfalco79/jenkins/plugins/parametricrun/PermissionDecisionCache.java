@@ -0,0 +1,278 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Remembers for a short time if the current user can use a parametric action
+ * of a job, to render pages that list many jobs without evaluating the
+ * authorization strategy for each of them.
+ * <p>
+ * Decisions are only used to show or hide the actions, requests are always
+ * verified against the authorization strategy. All decisions are discarded
+ * when the global configuration is saved, which includes the security
+ * settings, while saving a folder or a job discards only the decisions of
+ * the jobs in it. Other changes are seen once the decisions expire.
+ *
+ * @author Nikolas Falco
+ */
+@Restricted(NoExternalUse.class)
+public final class PermissionDecisionCache {
+
+    /**
+     * How long a decision is valid, in milliseconds.
+     */
+    private static final long TTL = TimeUnit.MILLISECONDS.toNanos(SystemProperties.getLong(PermissionDecisionCache.class.getName() + ".ttl", 5000L));
+
+    /**
+     * The maximum number of decisions kept in memory.
+     */
+    private static final int MAX_SIZE = SystemProperties.getInteger(PermissionDecisionCache.class.getName() + ".maxSize", 10000);
+
+    private static final PermissionDecisionCache INSTANCE = new PermissionDecisionCache();
+
+    private static final class Key {
+        private final String user;
+        private final String job;
+        private final Permission permission;
+
+        private Key(String user, String job, Permission permission) {
+            this.user = user;
+            this.job = job;
+            this.permission = permission;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return user.equals(other.user) && job.equals(other.job) && permission == other.permission;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, job, permission);
+        }
+    }
+
+    private static final class Decision {
+        private final boolean granted;
+        private final long stamp;
+        private final long expiration;
+
+        private Decision(boolean granted, long stamp, long expiration) {
+            this.granted = granted;
+            this.stamp = stamp;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * When the decisions of an item were last discarded.
+     */
+    private static final class Invalidation {
+        private final long stamp;
+        private final long time;
+
+        private Invalidation(long stamp, long time) {
+            this.stamp = stamp;
+            this.time = time;
+        }
+    }
+
+    private final ConcurrentMap<Key, Decision> decisions = new ConcurrentHashMap<>();
+    /**
+     * Incremented on each invalidation, a decision is stamped with the value
+     * read before asking the authorization strategy.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    /**
+     * The decisions stamped before this value are stale for all jobs.
+     */
+    private volatile long invalidatedAll;
+    /**
+     * The recent invalidations by job or folder full name, decisions
+     * stamped before are stale. Entries older than the TTL are useless
+     * because the decisions taken before are expired.
+     */
+    private final ConcurrentMap<String, Invalidation> invalidated = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private PermissionDecisionCache() {
+    }
+
+    @NonNull
+    public static PermissionDecisionCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns if the current user has the given permission on the job.
+     *
+     * @param job the job
+     * @param permission the permission to check
+     * @return {@code true} if the permission is granted
+     */
+    public boolean hasPermission(@NonNull Job<?, ?> job, @NonNull Permission permission) {
+        String fullName = job.getFullName();
+        Key key = new Key(Jenkins.getAuthentication2().getName(), fullName, permission);
+        long now = System.nanoTime();
+
+        Decision decision = decisions.get(key);
+        if (decision != null && decision.expiration - now > 0 && isCurrent(decision.stamp, fullName)) {
+            hits.increment();
+            return decision.granted;
+        }
+        misses.increment();
+
+        long stamp = sequence.get();
+        boolean granted = job.hasPermission(permission);
+        // the job may have been saved meanwhile
+        if (isCurrent(stamp, fullName)) {
+            if (decisions.size() >= MAX_SIZE) {
+                evict(now);
+            }
+            decisions.put(key, new Decision(granted, stamp, now + TTL));
+        }
+        return granted;
+    }
+
+    /*
+     * Returns if nothing was invalidated for the job, or the folders
+     * containing it, after the given stamp.
+     */
+    private boolean isCurrent(long stamp, String fullName) {
+        if (stamp < invalidatedAll) {
+            return false;
+        }
+        if (invalidated.isEmpty()) {
+            return true;
+        }
+        for (int idx = fullName.indexOf('/'); idx != -1; idx = fullName.indexOf('/', idx + 1)) {
+            if (isInvalidated(stamp, fullName.substring(0, idx))) {
+                return false;
+            }
+        }
+        return !isInvalidated(stamp, fullName);
+    }
+
+    private boolean isInvalidated(long stamp, String fullName) {
+        Invalidation invalidation = invalidated.get(fullName);
+        return invalidation != null && stamp < invalidation.stamp;
+    }
+
+    /*
+     * Makes room dropping the expired decisions first, then arbitrary ones,
+     * down to 90% of the maximum size so that the scan is not repeated on
+     * each new decision.
+     */
+    private void evict(long now) {
+        decisions.values().removeIf(decision -> decision.expiration - now <= 0);
+        int target = MAX_SIZE - MAX_SIZE / 10;
+        Iterator<Key> it = decisions.keySet().iterator();
+        while (decisions.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Discards all decisions.
+     */
+    public void invalidate() {
+        invalidatedAll = sequence.incrementAndGet();
+        decisions.clear();
+        invalidated.clear();
+    }
+
+    /**
+     * Discards the decisions of a job, or of all jobs in a folder.
+     *
+     * @param fullName the full name of the job or folder
+     */
+    public void invalidate(@NonNull String fullName) {
+        long now = System.nanoTime();
+        invalidated.values().removeIf(invalidation -> now - invalidation.time > TTL);
+        // the decisions being taken are not cached
+        invalidated.put(fullName, new Invalidation(sequence.incrementAndGet(), now));
+
+        String prefix = fullName + '/';
+        decisions.keySet().removeIf(key -> key.job.equals(fullName) || key.job.startsWith(prefix));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the percentage of decisions served from the cache.
+     *
+     * @return the hit rate, {@code 0} if no decision was requested
+     */
+    public int getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total > 0 ? (int) (hitCount * 100 / total) : 0;
+    }
+
+    /**
+     * Discards the decisions when the permissions may have changed.
+     */
+    @Extension
+    public static class SaveableListenerImpl extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins) {
+                get().invalidate();
+            } else if (o instanceof Item) {
+                // job or folder properties, permissions included
+                get().invalidate(((Item) o).getFullName());
+            }
+        }
+    }
+}
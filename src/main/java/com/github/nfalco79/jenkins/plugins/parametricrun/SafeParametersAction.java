@@ -17,23 +17,44 @@
 package com.github.nfalco79.jenkins.plugins.parametricrun;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
+
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.Action;
+import hudson.model.BooleanParameterValue;
 import hudson.model.EnvironmentContributor;
 import hudson.model.Job;
 import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
 import hudson.model.Run;
+import hudson.model.StringParameterValue;
 import hudson.model.TaskListener;
+import hudson.model.TextParameterValue;
+import hudson.util.XStream2;
+import jenkins.util.SystemProperties;
 
 /**
  * Action container that enhance at runtime a build with parameters value.
@@ -42,9 +63,42 @@ import hudson.model.TaskListener;
  */
 @Restricted(NoExternalUse.class)
 public class SafeParametersAction extends ParametersAction {
+    private static final Logger LOGGER = Logger.getLogger(SafeParametersAction.class.getName());
+
+    /**
+     * The number of characters above which a text value is moved in the
+     * build directory, {@code 0} keeps all values in memory.
+     */
+    private static final int LARGE_VALUE_THRESHOLD = SystemProperties.getInteger(SafeParametersAction.class.getName() + ".largeValueThreshold", 64 * 1024);
+
+    /**
+     * The number of characters of a large value kept in memory.
+     */
+    static final int PREVIEW_LENGTH = SystemProperties.getInteger(SafeParametersAction.class.getName() + ".previewLength", 1024);
 
+    /**
+     * Immutable, replaced as a whole when the large values are moved in the
+     * build directory so that the lists given out never change.
+     */
     @NonNull
-    private final List<ParameterValue> parameters;
+    private volatile List<ParameterValue> parameters;
+
+    /**
+     * Hash of the normalized parameters, used to detect identical requests
+     * in the queue.
+     */
+    private transient volatile String fingerprint;
+
+    /**
+     * Parameters by name, built on first lookup.
+     */
+    private transient volatile Map<String, ParameterValue> index;
+
+    /**
+     * Environment variables of the parameters kept in memory, built on first
+     * use.
+     */
+    private transient volatile Map<String, String> environment;
 
     /**
      * At this point the list of parameter values is guaranteed to be safe,
@@ -54,7 +108,8 @@ public class SafeParametersAction extends ParametersAction {
      *        as safe
      */
     public SafeParametersAction(@NonNull List<ParameterValue> parameters) {
-        this.parameters = parameters;
+        // exact size copy, the caller can not change it later
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
     }
 
     /**
@@ -64,7 +119,7 @@ public class SafeParametersAction extends ParametersAction {
      */
     @Override
     public List<ParameterValue> getParameters() {
-        return Collections.unmodifiableList(parameters);
+        return parameters;
     }
 
     /**
@@ -76,15 +131,326 @@ public class SafeParametersAction extends ParametersAction {
      */
     @Override
     public ParameterValue getParameter(String name) {
+        return getIndex().get(name);
+    }
+
+    /**
+     * Moves the uploaded values and the large text values in the directory
+     * of the build.
+     */
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        super.onAttached(r);
+
+        List<ParameterValue> current = parameters;
+        List<ParameterValue> moved = null;
+        for (int i = 0; i < current.size(); i++) {
+            ParameterValue p = current.get(i);
+            if (p instanceof FileBackedParameterValue && ((FileBackedParameterValue) p).isUploaded()) {
+                try {
+                    ParameterValue fileValue = ((FileBackedParameterValue) p).attach(r, "parameters/" + i + ".txt");
+                    if (moved == null) {
+                        moved = new ArrayList<>(current);
+                    }
+                    moved.set(i, fileValue);
+                } catch (IOException e) {
+                    // still readable from the temporary file
+                    LOGGER.log(Level.WARNING, "Failed to move the value of parameter " + p.getName() + " in " + r.getRootDir(), e);
+                }
+            } else if (LARGE_VALUE_THRESHOLD > 0 && (p.getClass() == StringParameterValue.class || p.getClass() == TextParameterValue.class)) {
+                // exact types only, subclasses may have more fields to keep
+                String value = ((StringParameterValue) p).getValue();
+                if (value != null && value.length() > LARGE_VALUE_THRESHOLD) {
+                    try {
+                        ParameterValue fileValue = FileBackedParameterValue.write(r, "parameters/" + i + ".txt", p.getName(), p.getDescription(), value, PREVIEW_LENGTH);
+                        if (moved == null) {
+                            moved = new ArrayList<>(current);
+                        }
+                        moved.set(i, fileValue);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to store the value of parameter " + p.getName() + " in " + r.getRootDir(), e);
+                    }
+                }
+            }
+        }
+        if (moved != null) {
+            // the queue fingerprint is still valid, values are the same
+            parameters = Collections.unmodifiableList(moved);
+            index = null;
+            environment = null;
+        }
+    }
+
+    /**
+     * Builds the parameters index of builds loaded from disk.
+     */
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        super.onLoad(r);
         for (ParameterValue p : parameters) {
-            if (p == null) {
-                continue;
+            if (p instanceof FileBackedParameterValue) {
+                ((FileBackedParameterValue) p).onLoad(r);
+            }
+        }
+        getIndex();
+    }
+
+    private Map<String, ParameterValue> getIndex() {
+        Map<String, ParameterValue> result = index;
+        if (result == null) {
+            List<ParameterValue> source = parameters;
+            result = new HashMap<>((int) (source.size() / 0.75f) + 1);
+            for (ParameterValue p : source) {
+                // the first parameter with a name wins
+                if (p != null) {
+                    result.putIfAbsent(p.getName(), p);
+                }
             }
-            if (p.getName().equals(name)) {
-                return p;
+            if (source == parameters) {
+                // not cached if the list was replaced meanwhile
+                index = result;
             }
         }
-        return null;
+        return result;
+    }
+
+    /**
+     * Allows the queue to merge a new request into a pending item when both
+     * have the same parameters.
+     *
+     * @param actions the actions of the new request
+     * @return {@code true} if the parameters differ and a new item must be
+     *         scheduled
+     */
+    @Override
+    public boolean shouldSchedule(List<Action> actions) {
+        List<ParametersAction> others = Util.filter(actions, ParametersAction.class);
+        if (others.size() == 1 && others.get(0) instanceof SafeParametersAction) {
+            return !getFingerprint().equals(((SafeParametersAction) others.get(0)).getFingerprint());
+        }
+
+        List<ParameterValue> otherParameters = new ArrayList<>();
+        others.forEach(other -> otherParameters.addAll(other.getParameters()));
+        return !getFingerprint().equals(fingerprint(otherParameters));
+    }
+
+    private String getFingerprint() {
+        String result = fingerprint;
+        if (result == null) {
+            result = fingerprint(parameters);
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /*
+     * Hashes the parameters sorted by name, when a name is repeated only the
+     * first value is used as done by getParameter.
+     */
+    private static String fingerprint(List<ParameterValue> parameters) {
+        Map<String, ParameterValue> normalized = new TreeMap<>();
+        for (ParameterValue p : parameters) {
+            if (p != null) {
+                normalized.putIfAbsent(p.getName(), p);
+            }
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // mandatory for every Java platform
+            throw new IllegalStateException(e);
+        }
+        for (ParameterValue p : normalized.values()) {
+            update(digest, p.getName());
+            update(digest, p.getClass().getName());
+            if (p instanceof FileBackedParameterValue) {
+                digest((FileBackedParameterValue) p, digest);
+            } else {
+                update(digest, String.valueOf(p.getValue()));
+            }
+        }
+        return Util.toHexString(digest.digest());
+    }
+
+    /*
+     * Hashes the file content in chunks, a failure hashes a random value so
+     * that the request is never merged.
+     */
+    private static void digest(FileBackedParameterValue p, MessageDigest digest) {
+        try {
+            p.digest(digest);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Can not read the value of parameter " + p.getName() + " from " + p.getFile(), e);
+            update(digest, UUID.randomUUID().toString());
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        // prefix with the length so that fields can not be shifted
+        digest.update((value.length() + ":" + value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the environment variables of the parameters, computed once.
+     * The values moved in the build directory export only the characters
+     * kept in memory, unless they export the whole value which is read on
+     * each call so that it never stays in memory.
+     *
+     * @return an immutable map of parameter names and values
+     */
+    @NonNull
+    public Map<String, String> getEnvironment() {
+        List<ParameterValue> source = parameters;
+        Map<String, String> result = environment;
+        if (result == null) {
+            Map<String, String> paramValues = new HashMap<>();
+            for (ParameterValue p : source) {
+                if (p instanceof FileBackedParameterValue) {
+                    if (!FileBackedParameterValue.EXPORT_FULL_VALUE) {
+                        paramValues.put(p.getName(), ((FileBackedParameterValue) p).getPreview());
+                    }
+                } else if (p != null) {
+                    paramValues.put(p.getName(), String.valueOf(p.getValue()));
+                }
+            }
+            result = Collections.unmodifiableMap(paramValues);
+            if (source == parameters) {
+                // not cached if the list was replaced meanwhile
+                environment = result;
+            }
+        }
+
+        if (!FileBackedParameterValue.EXPORT_FULL_VALUE) {
+            return result;
+        }
+        Map<String, String> withFiles = null;
+        for (ParameterValue p : source) {
+            if (p instanceof FileBackedParameterValue) {
+                if (withFiles == null) {
+                    withFiles = new HashMap<>(result);
+                }
+                withFiles.put(p.getName(), ((FileBackedParameterValue) p).getEnvironmentValue());
+            }
+        }
+        return withFiles != null ? Collections.unmodifiableMap(withFiles) : result;
+    }
+
+    /**
+     * Writes the parameters in a compact form where the most common values
+     * are a single element and names are not repeated for each field.
+     * <p>
+     * Builds saved before are still read with the reflection format. Names
+     * and short values read from the compact form are interned, so that the
+     * builds of the same job share them.
+     */
+    public static class ConverterImpl extends XStream2.PassthruConverter<SafeParametersAction> {
+        private static final String FORMAT_ATTRIBUTE = "format";
+        private static final String COMPACT_FORMAT = "compact";
+        private static final String NAME_ATTRIBUTE = "name";
+        private static final String DESCRIPTION_ATTRIBUTE = "description";
+        private static final String STRING_NODE = "string";
+        private static final String TEXT_NODE = "text";
+        private static final String BOOLEAN_NODE = "boolean";
+        private static final String VALUE_NODE = "value";
+        /**
+         * Values longer than this are unlikely to be shared between builds.
+         */
+        private static final int MAX_INTERNED_LENGTH = 256;
+
+        private final Mapper mapper;
+
+        public ConverterImpl(XStream2 xstream) {
+            super(xstream);
+            this.mapper = xstream.getMapper();
+        }
+
+        @Override
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            SafeParametersAction action = (SafeParametersAction) source;
+            writer.addAttribute(FORMAT_ATTRIBUTE, COMPACT_FORMAT);
+            for (ParameterValue p : action.parameters) {
+                if (p == null) {
+                    continue;
+                }
+                String node = getNodeName(p);
+                if (node != null) {
+                    writer.startNode(node);
+                    writer.addAttribute(NAME_ATTRIBUTE, p.getName());
+                    if (p.getDescription() != null) {
+                        writer.addAttribute(DESCRIPTION_ATTRIBUTE, p.getDescription());
+                    }
+                    writer.setValue(String.valueOf(p.getValue()));
+                    writer.endNode();
+                } else {
+                    writer.startNode(VALUE_NODE);
+                    writer.addAttribute(mapper.aliasForSystemAttribute("class"), mapper.serializedClass(p.getClass()));
+                    context.convertAnother(p);
+                    writer.endNode();
+                }
+            }
+        }
+
+        /*
+         * Returns the node of the values written as a single element, null
+         * for the other values.
+         */
+        private static String getNodeName(ParameterValue p) {
+            if (p.getValue() == null) {
+                return null;
+            }
+            // exact types only, subclasses may have more fields
+            if (p.getClass() == StringParameterValue.class) {
+                return STRING_NODE;
+            } else if (p.getClass() == TextParameterValue.class) {
+                return TEXT_NODE;
+            } else if (p.getClass() == BooleanParameterValue.class) {
+                return BOOLEAN_NODE;
+            }
+            return null;
+        }
+
+        @Override
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            if (!COMPACT_FORMAT.equals(reader.getAttribute(FORMAT_ATTRIBUTE))) {
+                return super.unmarshal(reader, context);
+            }
+
+            List<ParameterValue> values = new ArrayList<>();
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                String name = Util.intern(reader.getAttribute(NAME_ATTRIBUTE));
+                String description = Util.intern(reader.getAttribute(DESCRIPTION_ATTRIBUTE));
+                switch (reader.getNodeName()) {
+                case STRING_NODE:
+                    values.add(new StringParameterValue(name, internValue(reader.getValue()), description));
+                    break;
+                case TEXT_NODE:
+                    values.add(new TextParameterValue(name, internValue(reader.getValue()), description));
+                    break;
+                case BOOLEAN_NODE:
+                    values.add(new BooleanParameterValue(name, Boolean.parseBoolean(reader.getValue()), description));
+                    break;
+                default:
+                    Class<?> type = mapper.realClass(reader.getAttribute(mapper.aliasForSystemAttribute("class")));
+                    values.add((ParameterValue) context.convertAnother(null, type));
+                    break;
+                }
+                reader.moveUp();
+            }
+            return new SafeParametersAction(values);
+        }
+
+        private static String internValue(String value) {
+            return value.length() <= MAX_INTERNED_LENGTH ? value.intern() : value;
+        }
+
+        @Override
+        protected void callback(SafeParametersAction obj, UnmarshallingContext context) {
+            // builds in the reflection format are written compact on next save
+            obj.parameters = Collections.unmodifiableList(new ArrayList<>(Util.fixNull(obj.parameters)));
+        }
     }
 
     @Extension
@@ -94,7 +460,9 @@ public class SafeParametersAction extends ParametersAction {
         public void buildEnvironmentFor(@SuppressWarnings("rawtypes") @NonNull Job job,
                                         @NonNull EnvVars envs,
                                         @NonNull TaskListener listener) throws IOException, InterruptedException {
-            job.getActions(SafeParametersAction.class).forEach(a -> envs.putAll(asParamValues(a)));
+            for (Object action : job.getActions(SafeParametersAction.class)) {
+                contribute(((SafeParametersAction) action).getEnvironment(), envs);
+            }
         }
 
         @Override
@@ -103,18 +471,20 @@ public class SafeParametersAction extends ParametersAction {
                                         @NonNull TaskListener listener) throws IOException, InterruptedException {
             SafeParametersAction action = run.getAction(SafeParametersAction.class);
             if (action != null) {
-                envs.putAll(asParamValues(action));
+                contribute(action.getEnvironment(), envs);
             }
         }
 
-        private Map<String, String> asParamValues(@NonNull SafeParametersAction action) {
-            Map<String, String> paramValues = new HashMap<>();
-
-            for (ParameterValue p : action.getParameters()) {
-                paramValues.put(p.getName(), String.valueOf(p.getValue()));
+        /*
+         * Skips the variables that already have the same value, like the ones
+         * contributed by the same action through ParametersAction.
+         */
+        private void contribute(Map<String, String> environment, EnvVars envs) {
+            for (Map.Entry<String, String> variable : environment.entrySet()) {
+                if (!variable.getValue().equals(envs.get(variable.getKey()))) {
+                    envs.put(variable.getKey(), variable.getValue());
+                }
             }
-
-            return paramValues;
         }
     }
 
@@ -20,6 +20,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.github.nfalco79.jenkins.plugins.parametricrun.FileBackedParameterValue;
 import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterAction;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -29,6 +30,7 @@ import hudson.model.Job;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
 import hudson.model.StringParameterValue;
+import hudson.security.Permission;
 
 /**
  * Allows to run a job decorated with some configured parameters to create a new
@@ -60,19 +62,17 @@ public class NewBranchAction extends ParameterAction {
     @Override
     protected Action[] buildAction(List<ParameterValue> paramValues) {
         Map<String, String> paramEnvVars = new LinkedHashMap<>();
-        paramValues.forEach(param -> paramEnvVars.put(param.getName(), String.valueOf(param.getValue())));
+        // uploaded values are not read in memory, macros get the same value of the environment
+        paramValues.forEach(param -> paramEnvVars.put(param.getName(), param instanceof FileBackedParameterValue
+                ? ((FileBackedParameterValue) param).getEnvironmentValue()
+                : String.valueOf(param.getValue())));
         paramValues.add(new StringParameterValue(ENV_VARIABLE, Util.replaceMacro(branchName, paramEnvVars)));
 
         return super.buildAction(paramValues);
     }
 
     @Override
-    protected boolean isActionEnabled() {
-        return this.job.isBuildable() && NewBranchPermissionHelper.hasReleasePermission(job);
-    }
-
-    @Override
-    protected void verifyPermission() {
-        NewBranchPermissionHelper.checkReleasePermission(job);
+    protected Permission getPermission() {
+        return NewBranchPermissionHelper.BRANCH_PERMISSION;
     }
 }
\ No newline at end of file
@@ -18,13 +18,12 @@ package com.github.nfalco79.jenkins.plugins.parametricrun.branch;
 
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterAction;
 import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterBranchProperty;
 
 import hudson.Extension;
 import hudson.model.Job;
-import hudson.model.Run;
 import jenkins.branch.BranchPropertyDescriptor;
-import jenkins.branch.JobDecorator;
 
 public class NewBranchProperty extends ParameterBranchProperty {
 
@@ -41,15 +40,18 @@ public class NewBranchProperty extends ParameterBranchProperty {
     }
 
     @Override
-    public <P extends Job<P, B>, B extends Run<P, B>> JobDecorator<P, B> jobDecorator(Class<P> clazz) {
-        return new JobDecorator<P, B>() {
-
-            @Override
-            public P project(P project) {
-                project.replaceAction(new NewBranchAction(project, getActionLabel(), getParameterDefinitions(), branchName));
-                return super.project(project);
-            }
-        };
+    protected ParameterBranchProperty copy() {
+        return new NewBranchProperty(getActionLabel(), branchName);
+    }
+
+    @Override
+    protected ParameterAction newAction(Job<?, ?> job) {
+        return new NewBranchAction(job, getActionLabel(), getParameterDefinitions(), branchName);
+    }
+
+    @Override
+    protected Class<? extends ParameterAction> getActionType() {
+        return NewBranchAction.class;
     }
 
     @Extension
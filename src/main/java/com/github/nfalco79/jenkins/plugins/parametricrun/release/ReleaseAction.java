@@ -16,20 +16,42 @@
  */
 package com.github.nfalco79.jenkins.plugins.parametricrun.release;
 
+import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.FileBackedParameterValue;
 import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterAction;
 import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterBranchProperty;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Util;
 import hudson.model.Action;
+import hudson.model.Item;
 import hudson.model.Job;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
 import hudson.model.Run;
+import hudson.model.SimpleParameterDefinition;
+import hudson.security.Permission;
+import jakarta.servlet.http.HttpServletResponse;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
 
 /**
  * Allows to run a job decorated with some configured parameters for release.
@@ -38,6 +60,22 @@ import hudson.model.Run;
  */
 public class ReleaseAction extends ParameterAction {
 
+    /**
+     * Name of the parameter with the version to release.
+     */
+    public static final String RELEASE_VERSION_PARAMETER = "RELEASE_VERSION";
+
+    /**
+     * A semantic version with an optional prefix, like {@code v1.2.3-rc.1}.
+     */
+    private static final Pattern SEMANTIC_VERSION = Pattern.compile("(.*?)(\\d+)\\.(\\d+)\\.(\\d+)(-[0-9A-Za-z.-]+)?(\\+[0-9A-Za-z.-]+)?");
+
+    /**
+     * How many releases are shown for each page of the history.
+     */
+    private static final int PAGE_SIZE = SystemProperties.getInteger(ReleaseAction.class.getName() + ".pageSize", 20);
+    private static final int MAX_PAGE_SIZE = 100;
+
     public ReleaseAction(Job<?, ?> job, String badgeTemplate, List<ParameterDefinition> parameterDefinitions) {
         super(job, Messages.ReleaseAction_diplayName(), badgeTemplate, parameterDefinitions);
     }
@@ -55,7 +93,10 @@ public class ReleaseAction extends ParameterAction {
         Action[] baseActions = super.buildAction(paramValues);
 
         Map<String, String> paramEnvVars = new LinkedHashMap<>();
-        paramValues.forEach(param -> paramEnvVars.put(param.getName(), String.valueOf(param.getValue())));
+        // uploaded values are not read in memory, macros get the same value of the environment
+        paramValues.forEach(param -> paramEnvVars.put(param.getName(), param instanceof FileBackedParameterValue
+                ? ((FileBackedParameterValue) param).getEnvironmentValue()
+                : String.valueOf(param.getValue())));
 
         Action[] actions = new Action[baseActions.length + 1];
         System.arraycopy(baseActions, 0, actions, 0, baseActions.length);
@@ -68,6 +109,280 @@ public class ReleaseAction extends ParameterAction {
         return actions;
     }
 
+    /**
+     * Returns the release builds of the job as recorded in the
+     * {@link ReleaseIndex}, builds are not loaded from disk.
+     *
+     * @return the release builds from the most recent
+     */
+    public List<ReleaseIndex.Entry> getReleases() {
+        return ReleaseIndex.of(getJob()).getEntries(getJob());
+    }
+
+    /**
+     * Returns a page of the release builds of the job.
+     *
+     * @param before only builds with a lower number are returned, zero or
+     *        less to start from the last release
+     * @param limit the maximum number of releases
+     * @return the release builds from the most recent
+     */
+    public List<ReleaseIndex.Entry> getReleases(int before, int limit) {
+        return ReleaseIndex.of(getJob()).getEntries(getJob(), before, limit);
+    }
+
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    /**
+     * Returns the page of the release history rendered by the release page,
+     * the {@code before} request parameter is the cursor of the page.
+     * <p>
+     * One more release than the page size is returned to know if there is a
+     * next page.
+     *
+     * @return the releases of the requested page from the most recent
+     */
+    public List<ReleaseIndex.Entry> getHistoryPage() {
+        int before = 0;
+        StaplerRequest2 req = Stapler.getCurrentRequest2();
+        if (req != null && req.getParameter("before") != null) {
+            try {
+                before = Integer.parseInt(req.getParameter("before"));
+            } catch (NumberFormatException e) {
+                // start from the last release
+            }
+        }
+        return getReleases(before, PAGE_SIZE + 1);
+    }
+
+    /**
+     * Returns the build of a release to render its parameters.
+     *
+     * @param release the release
+     * @return the build, {@code null} if it has been deleted
+     */
+    @CheckForNull
+    public Run<?, ?> getBuild(@NonNull ReleaseIndex.Entry release) {
+        return getJob().getBuildByNumber(release.getNumber());
+    }
+
+    /**
+     * Returns a page of the release history as JSON, for the scripts that
+     * query the releases of the job.
+     * <p>
+     * The {@code next} field is the cursor to pass as {@code before} to get
+     * the next page, {@code null} if there are no more releases.
+     *
+     * @param req the request
+     * @param rsp the response
+     * @param before only builds with a lower number are returned
+     * @param limit the page size, the default page size if zero or less
+     * @throws IOException in case of failure writing the response
+     */
+    public void doHistory(StaplerRequest2 req,
+                          StaplerResponse2 rsp,
+                          @QueryParameter int before,
+                          @QueryParameter int limit) throws IOException {
+        getJob().checkPermission(Item.READ);
+
+        int pageSize = limit > 0 ? Math.min(limit, MAX_PAGE_SIZE) : PAGE_SIZE;
+        // one more to know if there is a next page
+        List<ReleaseIndex.Entry> releases = getReleases(before, pageSize + 1);
+        boolean hasNext = releases.size() > pageSize;
+        if (hasNext) {
+            releases = releases.subList(0, pageSize);
+        }
+
+        writeReleases(req, rsp, releases, hasNext);
+    }
+
+    /**
+     * Searches the releases which parameters match the given queries, the
+     * response has the same format of {@link #doHistory}.
+     * <p>
+     * Each {@code q} parameter is a query in the form {@code NAME=VALUE},
+     * where the value may contain the {@code *} and {@code ?} wildcards, for
+     * example {@code RELEASE_VERSION=2.3.*}. A release must match all
+     * queries. Builds are not loaded from disk.
+     *
+     * @param req the request
+     * @param rsp the response
+     * @param before only builds with a lower number are returned
+     * @param limit the page size, the default page size if zero or less
+     * @throws IOException in case of failure writing the response
+     */
+    public void doSearch(StaplerRequest2 req,
+                         StaplerResponse2 rsp,
+                         @QueryParameter int before,
+                         @QueryParameter int limit) throws IOException {
+        getJob().checkPermission(Item.READ);
+
+        String[] queries = req.getParameterValues("q");
+        if (queries == null || queries.length == 0) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.ReleaseAction_search_noQuery());
+            return;
+        }
+        Map<String, String> criteria = new LinkedHashMap<>();
+        for (String query : queries) {
+            int idx = query.indexOf('=');
+            if (idx <= 0) {
+                rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, Messages.ReleaseAction_search_invalidQuery(query));
+                return;
+            }
+            String name = query.substring(0, idx).trim();
+            String value = query.substring(idx + 1);
+            String previous = criteria.putIfAbsent(name, value);
+            if (previous != null && !previous.equals(value)) {
+                // a parameter can not have two different values
+                writeReleases(req, rsp, Collections.emptyList(), false);
+                return;
+            }
+        }
+
+        int pageSize = limit > 0 ? Math.min(limit, MAX_PAGE_SIZE) : PAGE_SIZE;
+        List<ReleaseIndex.Entry> releases = ReleaseIndex.of(getJob()).search(getJob(), criteria, before, pageSize + 1);
+        boolean hasNext = releases.size() > pageSize;
+        if (hasNext) {
+            releases = releases.subList(0, pageSize);
+        }
+
+        writeReleases(req, rsp, releases, hasNext);
+    }
+
+    private void writeReleases(StaplerRequest2 req,
+                               StaplerResponse2 rsp,
+                               List<ReleaseIndex.Entry> releases,
+                               boolean hasNext) throws IOException {
+        String jobURL = req.getContextPath() + '/' + getJob().getUrl();
+        // strings in a map are kept as they are, JSONObject.element would
+        // convert the values that look like JSON, such as "[1]" or "null"
+        List<Map<String, Object>> jsonReleases = new ArrayList<>(releases.size());
+        for (ReleaseIndex.Entry release : releases) {
+            Map<String, Object> jsonRelease = new LinkedHashMap<>();
+            jsonRelease.put("number", release.getNumber());
+            jsonRelease.put("url", jobURL + release.getNumber() + '/');
+            jsonRelease.put("badgeTip", nullToJSON(release.getBadgeTip()));
+            jsonRelease.put("result", nullToJSON(release.getResult()));
+            jsonRelease.put("parameters", new LinkedHashMap<>(release.getParameters()));
+            jsonReleases.add(jsonRelease);
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("releases", jsonReleases);
+        page.put("next", hasNext ? (Object) releases.get(releases.size() - 1).getNumber() : JSONNull.getInstance());
+        JSONObject json = JSONObject.fromObject(page);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        json.write(rsp.getWriter());
+    }
+
+    private static Object nullToJSON(String value) {
+        return value != null ? value : JSONNull.getInstance();
+    }
+
+    /**
+     * Returns the most recent successful release, as recorded in the
+     * {@link ReleaseIndex}.
+     *
+     * @return the last successful release, {@code null} if none
+     */
+    @CheckForNull
+    public ReleaseIndex.Entry getLastSuccessfulRelease() {
+        return ReleaseIndex.of(getJob()).getLastSuccessful(getJob());
+    }
+
+    /**
+     * Returns the {@value #RELEASE_VERSION_PARAMETER} of the last successful
+     * release.
+     *
+     * @return the last released version, {@code null} if unknown
+     */
+    @CheckForNull
+    public String getLastReleaseVersion() {
+        ReleaseIndex.Entry release = getLastSuccessfulRelease();
+        return release != null ? release.getParameters().get(RELEASE_VERSION_PARAMETER) : null;
+    }
+
+    /**
+     * Returns the version that follows the last released one.
+     *
+     * @return the next version, {@code null} if the last released version is
+     *         unknown or it is not a semantic version
+     */
+    @CheckForNull
+    public String getNextReleaseVersion() {
+        String version = getLastReleaseVersion();
+        return version != null ? nextVersion(version) : null;
+    }
+
+    /**
+     * Returns the parameter definitions of the release form, with the values
+     * of the last successful release as default values and the
+     * {@value #RELEASE_VERSION_PARAMETER} bumped to the next version.
+     * <p>
+     * Only the last successful release is read from the index, builds are
+     * not loaded.
+     *
+     * @return the parameter definitions to show in the release form
+     */
+    public List<ParameterDefinition> getPrefilledParameterDefinitions() {
+        List<ParameterDefinition> definitions = getParameterDefinitions();
+        ReleaseIndex.Entry release = getLastSuccessfulRelease();
+        if (definitions == null || release == null) {
+            return definitions;
+        }
+
+        Map<String, String> values = new HashMap<>(release.getParameters());
+        String version = values.remove(RELEASE_VERSION_PARAMETER);
+        String nextVersion = version != null ? nextVersion(version) : null;
+        if (nextVersion != null) {
+            values.put(RELEASE_VERSION_PARAMETER, nextVersion);
+        }
+
+        List<ParameterDefinition> prefilled = new ArrayList<>(definitions.size());
+        for (ParameterDefinition definition : definitions) {
+            prefilled.add(prefill(definition, values.get(definition.getName())));
+        }
+        return prefilled;
+    }
+
+    private static ParameterDefinition prefill(ParameterDefinition definition, String value) {
+        if (value == null || !(definition instanceof SimpleParameterDefinition)) {
+            return definition;
+        }
+        try {
+            ParameterValue defaultValue = ((SimpleParameterDefinition) definition).createValue(value);
+            return definition.copyWithDefaultValue(defaultValue);
+        } catch (IllegalArgumentException e) {
+            // the value is no longer valid, for example a removed choice
+            return definition;
+        }
+    }
+
+    /**
+     * Returns the version that follows the given one by semantic versioning
+     * rules. A pre-release version is released as is, otherwise the patch
+     * number is incremented keeping its leading zeros, like {@code 2024.01.09}
+     * to {@code 2024.01.10}. Build metadata are dropped.
+     *
+     * @param version the released version
+     * @return the next version, {@code null} if the given version is not a
+     *         semantic version
+     */
+    @CheckForNull
+    static String nextVersion(@NonNull String version) {
+        Matcher matcher = SEMANTIC_VERSION.matcher(version.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        String patch = matcher.group(4);
+        if (matcher.group(5) == null) {
+            patch = StringUtils.leftPad(new BigInteger(patch).add(BigInteger.ONE).toString(), patch.length(), '0');
+        }
+        return matcher.group(1) + matcher.group(2) + '.' + matcher.group(3) + '.' + patch;
+    }
+
     /**
      * Gathers all previous build marked with a badge release.
      *
@@ -76,10 +391,10 @@ public class ReleaseAction extends ParameterAction {
     public List<Run<?, ?>> getPreviousParametricBuilds() {
         List<Run<?, ?>> previousReleaseBuilds = new ArrayList<>();
 
-        for (Run<?, ?> build : getJob().getBuilds()) {
-            ReleaseBuildBadgeAction badge = build.getAction(ReleaseBuildBadgeAction.class);
+        for (ReleaseIndex.Entry release : getReleases()) {
+            Run<?, ?> build = getJob().getBuildByNumber(release.getNumber());
 
-            if (badge != null) {
+            if (build != null) {
                 previousReleaseBuilds.add(build);
             }
         }
@@ -88,19 +403,19 @@ public class ReleaseAction extends ParameterAction {
     }
 
     public String getBadgeTipOfBuild(Run<?, ?> build) {
-        ReleaseBuildBadgeAction badge = build.getAction(ReleaseBuildBadgeAction.class);
+        ReleaseIndex.Entry release = ReleaseIndex.of(getJob()).get(getJob(), build.getNumber());
+        if (release != null) {
+            return release.getBadgeTip();
+        }
 
-        return badge.getBadgeTip();
-    }
+        ReleaseBuildBadgeAction badge = build.getAction(ReleaseBuildBadgeAction.class);
 
-    @Override
-    protected boolean isActionEnabled() {
-        return this.job.isBuildable() && ReleasePermissionHelper.hasReleasePermission(job);
+        return badge != null ? badge.getBadgeTip() : null;
     }
 
     @Override
-    protected void verifyPermission() {
-        ReleasePermissionHelper.checkReleasePermission(job);
+    protected Permission getPermission() {
+        return ReleasePermissionHelper.RELEASE_PERMISSION;
     }
 
 }
\ No newline at end of file
@@ -19,14 +19,13 @@ package com.github.nfalco79.jenkins.plugins.parametricrun.release;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterAction;
 import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterBranchProperty;
 
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.Job;
-import hudson.model.Run;
 import jenkins.branch.BranchPropertyDescriptor;
-import jenkins.branch.JobDecorator;
 
 public class ReleaseBranchProperty extends ParameterBranchProperty {
 
@@ -40,15 +39,18 @@ public class ReleaseBranchProperty extends ParameterBranchProperty {
     }
 
     @Override
-    public <P extends Job<P, B>, B extends Run<P, B>> JobDecorator<P, B> jobDecorator(Class<P> clazz) {
-        return new JobDecorator<P, B>() {
-
-            @Override
-            public P project(P project) {
-                project.replaceAction(new ReleaseAction(project, getBadgeTemplate(), getParameterDefinitions()));
-                return super.project(project);
-            }
-        };
+    protected ParameterBranchProperty copy() {
+        return new ReleaseBranchProperty(getActionLabel(), getBadgeTemplate());
+    }
+
+    @Override
+    protected ParameterAction newAction(Job<?, ?> job) {
+        return new ReleaseAction(job, getBadgeTemplate(), getParameterDefinitions());
+    }
+
+    @Override
+    protected Class<? extends ParameterAction> getActionType() {
+        return ReleaseAction.class;
     }
 
     @Extension
@@ -0,0 +1,716 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun.release;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.FileBackedParameterValue;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.AtomicFileWriter;
+
+/**
+ * Index of the release builds of a job, so that the release page does not
+ * load every build of the job from disk.
+ * <p>
+ * The index is kept in an append-only journal in the job directory where
+ * each line records the start, the completion or the deletion of a release
+ * build. The journal is rebuilt scanning the builds only when it is missing
+ * or can not be read, and it is compacted on load when most of its records
+ * are outdated or when builds interrupted by a restart are completed.
+ * <p>
+ * The values of the parameters are indexed in memory, so that releases can
+ * be searched by parameter value without loading any build.
+ *
+ * @author Nikolas Falco
+ */
+@Restricted(NoExternalUse.class)
+public final class ReleaseIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(ReleaseIndex.class.getName());
+
+    static final String INDEX_FILE = "release-index.log";
+
+    private static final char SEPARATOR = '\t';
+    private static final String ADD = "A";
+    private static final String COMPLETE = "C";
+    private static final String DELETE = "D";
+    private static final String NO_RESULT = "-";
+    /**
+     * Outdated records tolerated in the journal before it is compacted.
+     */
+    private static final int COMPACT_THRESHOLD = 100;
+
+    /**
+     * Indexes are bound to the job instance, a reloaded job gets a new one.
+     */
+    private static final Map<Job<?, ?>, ReleaseIndex> INDEXES = new WeakHashMap<>();
+
+    /**
+     * A release build as recorded in the index.
+     */
+    public static final class Entry {
+        private final int number;
+        private final long timestamp;
+        private final String badgeTip;
+        private final Map<String, String> parameters;
+        private volatile String result;
+
+        private Entry(int number, long timestamp, String badgeTip, Map<String, String> parameters, String result) {
+            this.number = number;
+            this.timestamp = timestamp;
+            this.badgeTip = badgeTip;
+            this.parameters = Collections.unmodifiableMap(parameters);
+            this.result = result;
+        }
+
+        /**
+         * Creates the entry of the given release build.
+         *
+         * @param run the release build
+         * @param badge the release badge of the build
+         * @return the index entry
+         */
+        static Entry of(@NonNull Run<?, ?> run, @NonNull ReleaseBuildBadgeAction badge) {
+            Map<String, String> parameters = new LinkedHashMap<>();
+            ParametersAction action = run.getAction(ParametersAction.class);
+            if (action != null) {
+                for (ParameterValue p : action.getParameters()) {
+                    if (p == null || p.isSensitive()) {
+                        continue;
+                    }
+                    // do not read the file of large values
+                    Object value = p instanceof FileBackedParameterValue ? ((FileBackedParameterValue) p).getPreview() : p.getValue();
+                    if (value instanceof String || value instanceof Boolean || value instanceof Number) {
+                        parameters.putIfAbsent(p.getName(), value.toString());
+                    }
+                }
+            }
+            return new Entry(run.getNumber(), run.getTimeInMillis(), badge.getBadgeTip(), parameters, resultOf(run));
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @CheckForNull
+        public String getBadgeTip() {
+            return badgeTip;
+        }
+
+        /**
+         * Returns the value of the parameters of the build, sensitive values
+         * and values that are not text are not recorded.
+         *
+         * @return the parameter values by name
+         */
+        @NonNull
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Returns the result of the build.
+         *
+         * @return the build result, {@code null} if the build is not yet
+         *         completed
+         */
+        @CheckForNull
+        public String getResult() {
+            return result;
+        }
+
+        public boolean isSuccessful() {
+            return Result.SUCCESS.toString().equals(result);
+        }
+
+        private String toRecord() {
+            StringBuilder record = new StringBuilder(ADD);
+            appendField(record, String.valueOf(number));
+            appendField(record, String.valueOf(timestamp));
+            appendField(record, result != null ? result : NO_RESULT);
+            appendField(record, badgeTip != null ? badgeTip : "");
+            parameters.forEach((name, value) -> record.append(SEPARATOR).append(escape(name)).append('=').append(escape(value)));
+            return record.toString();
+        }
+    }
+
+    private final NavigableMap<Integer, Entry> entries = new ConcurrentSkipListMap<>(Collections.reverseOrder());
+    /**
+     * Build numbers by parameter name and value, guarded by this.
+     */
+    private final Map<String, NavigableMap<String, Set<Integer>>> values = new HashMap<>();
+    private volatile boolean loaded;
+    /**
+     * The most recent successful release, kept up to date with the entries.
+     */
+    private volatile Entry lastSuccessful;
+
+    private ReleaseIndex() {
+    }
+
+    /**
+     * Returns the release index of the given job.
+     *
+     * @param job the job
+     * @return the index of the job
+     */
+    @NonNull
+    public static ReleaseIndex of(@NonNull Job<?, ?> job) {
+        synchronized (INDEXES) {
+            return INDEXES.computeIfAbsent(job, j -> new ReleaseIndex());
+        }
+    }
+
+    /**
+     * Returns all release builds of the job, from the most recent.
+     *
+     * @param job the job of this index
+     * @return the index entries
+     */
+    @NonNull
+    public List<Entry> getEntries(@NonNull Job<?, ?> job) {
+        ensureLoaded(job);
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Returns a window of the release builds of the job, from the most
+     * recent. Only the returned entries are visited.
+     *
+     * @param job the job of this index
+     * @param before only builds with a lower number are returned, zero or
+     *        less to start from the last release
+     * @param limit the maximum number of entries
+     * @return the index entries
+     */
+    @NonNull
+    public List<Entry> getEntries(@NonNull Job<?, ?> job, int before, int limit) {
+        ensureLoaded(job);
+        NavigableMap<Integer, Entry> window = before > 0 ? entries.tailMap(before, false) : entries;
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : window.values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most recent successful release of the job, without
+     * visiting the other entries.
+     *
+     * @param job the job of this index
+     * @return the last successful release, {@code null} if none
+     */
+    @CheckForNull
+    public Entry getLastSuccessful(@NonNull Job<?, ?> job) {
+        ensureLoaded(job);
+        return lastSuccessful;
+    }
+
+    /**
+     * Returns the entry of the given build.
+     *
+     * @param job the job of this index
+     * @param number the build number
+     * @return the index entry, {@code null} if the build is not a release
+     */
+    @CheckForNull
+    public Entry get(@NonNull Job<?, ?> job, int number) {
+        ensureLoaded(job);
+        return entries.get(number);
+    }
+
+    /**
+     * Returns the release builds which parameters match all the given
+     * criteria, from the most recent. Values are matched case sensitive and
+     * may contain the {@code *} and {@code ?} wildcards.
+     *
+     * @param job the job of this index
+     * @param criteria the value pattern by parameter name
+     * @param before only builds with a lower number are returned, zero or
+     *        less to start from the last release
+     * @param limit the maximum number of entries
+     * @return the matching index entries
+     */
+    @NonNull
+    public List<Entry> search(@NonNull Job<?, ?> job, @NonNull Map<String, String> criteria, int before, int limit) {
+        ensureLoaded(job);
+        Set<Integer> numbers = null;
+        synchronized (this) {
+            for (Map.Entry<String, String> criterion : criteria.entrySet()) {
+                Set<Integer> matches = find(criterion.getKey(), criterion.getValue());
+                if (numbers == null) {
+                    numbers = matches;
+                } else {
+                    numbers.retainAll(matches);
+                }
+                if (numbers.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        if (numbers == null) {
+            return getEntries(job, before, limit);
+        }
+
+        NavigableSet<Integer> sorted = new TreeSet<>(Collections.reverseOrder());
+        sorted.addAll(numbers);
+        List<Entry> result = new ArrayList<>();
+        for (int number : before > 0 ? sorted.tailSet(before, false) : sorted) {
+            if (result.size() >= limit) {
+                break;
+            }
+            Entry entry = entries.get(number);
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Returns a new set with the build numbers where the value of the
+     * parameter matches the pattern, only the values starting with the
+     * literal prefix of the pattern are visited.
+     */
+    private Set<Integer> find(String name, String pattern) {
+        Set<Integer> numbers = new HashSet<>();
+        NavigableMap<String, Set<Integer>> byValue = values.get(name);
+        if (byValue == null) {
+            return numbers;
+        }
+
+        int wildcard = indexOfWildcard(pattern);
+        if (wildcard == -1) {
+            numbers.addAll(byValue.getOrDefault(pattern, Collections.emptySet()));
+            return numbers;
+        }
+        String prefix = pattern.substring(0, wildcard);
+        for (Map.Entry<String, Set<Integer>> value : byValue.tailMap(prefix, true).entrySet()) {
+            if (!value.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (matches(pattern, value.getKey())) {
+                numbers.addAll(value.getValue());
+            }
+        }
+        return numbers;
+    }
+
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Case sensitive match of value against a pattern with * and ?
+     * wildcards.
+     */
+    static boolean matches(String pattern, String value) {
+        int p = 0;
+        int v = 0;
+        int starIdx = -1;
+        int mark = 0;
+        while (v < value.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                starIdx = p++;
+                mark = v;
+            } else if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == value.charAt(v))) {
+                p++;
+                v++;
+            } else if (starIdx != -1) {
+                p = starIdx + 1;
+                v = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private void put(Entry entry) {
+        Entry previous = entries.put(entry.number, entry);
+        if (previous != null) {
+            unindex(previous);
+        }
+        entry.parameters.forEach((name, value) -> values.computeIfAbsent(name, k -> new TreeMap<>()) //
+                .computeIfAbsent(value, k -> new HashSet<>()) //
+                .add(entry.number));
+        updateLastSuccessful(entry);
+    }
+
+    private void remove(int number) {
+        Entry entry = entries.remove(number);
+        if (entry != null) {
+            unindex(entry);
+            updateLastSuccessful(entry);
+        }
+    }
+
+    /*
+     * Updates the last successful release after the given entry is added,
+     * completed or removed. Entries are visited only when the last
+     * successful release is no longer valid.
+     */
+    private void updateLastSuccessful(Entry entry) {
+        Entry last = lastSuccessful;
+        if (entries.get(entry.number) == entry && entry.isSuccessful()) {
+            if (last == null || entry.number >= last.number) {
+                lastSuccessful = entry;
+            }
+        } else if (last != null && entry.number == last.number) {
+            // the last successful release was removed or replaced
+            lastSuccessful = null;
+            for (Entry candidate : entries.values()) {
+                if (candidate.isSuccessful()) {
+                    lastSuccessful = candidate;
+                    break;
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns the result of a build, a build that is no longer running
+     * without a result was interrupted.
+     */
+    @CheckForNull
+    private static String resultOf(Run<?, ?> run) {
+        if (run.isBuilding()) {
+            return null;
+        }
+        Result result = run.getResult();
+        return (result != null ? result : Result.ABORTED).toString();
+    }
+
+    private void clear() {
+        entries.clear();
+        values.clear();
+        lastSuccessful = null;
+    }
+
+    private void ensureLoaded(Job<?, ?> job) {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    load(job);
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    private static File getFile(Job<?, ?> job) {
+        return new File(job.getRootDir(), INDEX_FILE);
+    }
+
+    private void load(Job<?, ?> job) {
+        File file = getFile(job);
+        if (!file.isFile()) {
+            rebuild(job);
+            return;
+        }
+
+        clear();
+        int records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    records++;
+                    try {
+                        apply(line);
+                    } catch (RuntimeException e) {
+                        // a record truncated by a crash
+                        LOGGER.log(Level.WARNING, "Skip malformed record of the release index " + file + ": " + line, e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the release index " + file + ", it will be rebuilt", e);
+            rebuild(job);
+            return;
+        }
+
+        if (completeInterrupted(job) || records > entries.size() * 2 + COMPACT_THRESHOLD) {
+            write(job);
+        }
+    }
+
+    /*
+     * Completes the entries of the builds that are no longer running, their
+     * completion was not recorded because they were interrupted by a
+     * restart. Only the builds without a result are loaded.
+     */
+    private boolean completeInterrupted(Job<?, ?> job) {
+        boolean changed = false;
+        for (Entry entry : entries.values()) {
+            if (entry.result == null) {
+                Run<?, ?> build = job.getBuildByNumber(entry.number);
+                if (build == null) {
+                    // deleted while the controller was down
+                    remove(entry.number);
+                    changed = true;
+                } else if (!build.isBuilding()) {
+                    entry.result = resultOf(build);
+                    updateLastSuccessful(entry);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private void apply(String record) {
+        String[] fields = split(record);
+        switch (fields[0]) {
+        case ADD:
+            Map<String, String> parameters = new LinkedHashMap<>();
+            for (int i = 5; i < fields.length; i++) {
+                int idx = fields[i].indexOf('=');
+                parameters.put(unescape(fields[i].substring(0, idx)), unescape(fields[i].substring(idx + 1)));
+            }
+            int number = Integer.parseInt(fields[1]);
+            put(new Entry(number, Long.parseLong(fields[2]), unescape(fields[4]), parameters,
+                    NO_RESULT.equals(fields[3]) ? null : fields[3]));
+            break;
+        case COMPLETE:
+            Entry entry = entries.get(Integer.parseInt(fields[1]));
+            if (entry != null) {
+                entry.result = fields[2];
+                updateLastSuccessful(entry);
+            }
+            break;
+        case DELETE:
+            remove(Integer.parseInt(fields[1]));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown record " + record);
+        }
+    }
+
+    /*
+     * Scans all builds of the job, this is the only operation that loads
+     * every build.
+     */
+    private void rebuild(Job<?, ?> job) {
+        clear();
+        for (Run<?, ?> build : job.getBuilds()) {
+            ReleaseBuildBadgeAction badge = build.getAction(ReleaseBuildBadgeAction.class);
+            if (badge != null) {
+                put(Entry.of(build, badge));
+            }
+        }
+        write(job);
+    }
+
+    /*
+     * Rewrites the journal with a single record for each entry.
+     */
+    private void write(Job<?, ?> job) {
+        File file = getFile(job);
+        try {
+            AtomicFileWriter writer = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (Entry entry : entries.descendingMap().values()) {
+                    writer.write(entry.toRecord());
+                    writer.write('\n');
+                }
+                writer.commit();
+            } finally {
+                writer.abort();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the release index " + file, e);
+        }
+    }
+
+    /*
+     * Appends a record to the journal. When the journal does not exist the
+     * record is discarded and the index is rebuilt on next use, a journal
+     * created here would miss the builds before this one.
+     */
+    private synchronized void append(Job<?, ?> job, String record) {
+        File file = getFile(job);
+        if (!file.isFile()) {
+            loaded = false;
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+            writer.write(record);
+            writer.write('\n');
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update the release index " + file + ", it will be rebuilt", e);
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            loaded = false;
+            return;
+        }
+        if (loaded) {
+            apply(record);
+        }
+    }
+
+    void onStarted(@NonNull Run<?, ?> run, @NonNull ReleaseBuildBadgeAction badge) {
+        append(run.getParent(), Entry.of(run, badge).toRecord());
+    }
+
+    void onCompleted(@NonNull Run<?, ?> run) {
+        Result result = run.getResult();
+        if (result != null) {
+            append(run.getParent(), COMPLETE + SEPARATOR + run.getNumber() + SEPARATOR + result);
+        }
+    }
+
+    void onDeleted(@NonNull Run<?, ?> run) {
+        append(run.getParent(), DELETE + SEPARATOR + run.getNumber());
+    }
+
+    private static void appendField(StringBuilder record, String field) {
+        record.append(SEPARATOR).append(escape(field));
+    }
+
+    private static String[] split(String record) {
+        List<String> fields = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = record.indexOf(SEPARATOR, start)) != -1) {
+            fields.add(record.substring(start, end));
+            start = end + 1;
+        }
+        fields.add(record.substring(start));
+        return fields.toArray(new String[0]);
+    }
+
+    /*
+     * Percent encodes the characters that delimit records and fields.
+     */
+    static String escape(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '=' || c == SEPARATOR || c == '\n' || c == '\r') {
+                if (sb == null) {
+                    sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+                }
+                sb.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : value;
+    }
+
+    static String unescape(String value) {
+        int idx = value.indexOf('%');
+        if (idx == -1) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length()).append(value, 0, idx);
+        for (int i = idx; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                sb.append((char) Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Keeps the release index of the jobs up to date.
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onStarted(Run<?, ?> run, TaskListener listener) {
+            ReleaseBuildBadgeAction badge = run.getAction(ReleaseBuildBadgeAction.class);
+            if (badge != null) {
+                of(run.getParent()).onStarted(run, badge);
+            }
+        }
+
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            if (run.getAction(ReleaseBuildBadgeAction.class) != null) {
+                of(run.getParent()).onCompleted(run);
+            }
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            if (run.getAction(ReleaseBuildBadgeAction.class) != null) {
+                of(run.getParent()).onDeleted(run);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+/*
+ * Loads the next page of the release history each time the "load more"
+ * button is clicked, the page is rendered by historyPage.jelly and it
+ * brings the button of the following page.
+ */
+(function () {
+    Behaviour.specify(".release-history-more", "release-history-more", 0, function (button) {
+        button.addEventListener("click", function () {
+            button.disabled = true;
+            fetch(button.dataset.url + "?before=" + encodeURIComponent(button.dataset.before))
+                .then(function (rsp) {
+                    if (!rsp.ok) {
+                        throw new Error(rsp.statusText);
+                    }
+                    return rsp.text();
+                })
+                .then(function (html) {
+                    var page = document.createElement("div");
+                    page.innerHTML = html;
+                    button.replaceWith(page);
+                    Behaviour.applySubtree(page, true);
+                })
+                .catch(function () {
+                    button.disabled = false;
+                });
+        });
+    });
+})();
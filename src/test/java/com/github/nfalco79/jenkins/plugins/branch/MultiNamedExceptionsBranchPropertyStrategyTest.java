@@ -17,16 +17,30 @@
 package com.github.nfalco79.jenkins.plugins.branch;
 
 
+import com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.EvaluationMode;
 import com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.Named;
+import com.github.nfalco79.jenkins.plugins.parametricrun.ParameterBranchProperty;
+import com.github.nfalco79.jenkins.plugins.parametricrun.release.ReleaseBranchProperty;
+import hudson.model.ParameterDefinition;
+import hudson.model.StringParameterDefinition;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import jenkins.branch.BranchProperty;
+import jenkins.branch.BranchPropertyDescriptor;
 import jenkins.branch.BranchPropertyStrategy;
 import jenkins.scm.api.SCMHead;
+import net.sf.json.JSONArray;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import static com.github.nfalco79.jenkins.plugins.branch.MultiNamedExceptionsBranchPropertyStrategy.Named.isMatch;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class MultiNamedExceptionsBranchPropertyStrategyTest {
 
@@ -97,4 +111,280 @@ class MultiNamedExceptionsBranchPropertyStrategyTest {
         assertThat(isMatch("no-internal-\\-escape", "no-internal-\\\\-escape")).isFalse();
         assertThat(isMatch("no-internal-\\\\-escape", "no-internal-\\\\-escape")).isTrue();
     }
+
+    @Test
+    void invalid_names_are_reported() throws Exception {
+        assertThat(BranchNamePattern.compile("master,support/*").isValid()).isTrue();
+        assertThat(BranchNamePattern.compile("").getProblems()).hasSize(1);
+        assertThat(BranchNamePattern.compile(" , ").getProblems()).hasSize(1);
+        assertThat(BranchNamePattern.compile("master, ,develop").getProblems()).hasSize(1);
+        assertThat(BranchNamePattern.compile("master,!").getProblems()).hasSize(1);
+    }
+
+    @Test
+    void compiled_pattern_matches_with_separators_and_roots() throws Exception {
+        assertThat(isMatch("feature\\acme", "feature/*")).isTrue();
+        assertThat(isMatch("feature//acme", "feature/*")).isTrue();
+        assertThat(isMatch("/feature/acme", "feature/*")).isFalse();
+        assertThat(isMatch("/feature/acme", "/feature/*")).isTrue();
+        assertThat(isMatch("feature/a/b/acme", "feature/**/acme")).isTrue();
+        assertThat(isMatch("feature/acme", "feature/**/acme")).isTrue();
+        assertThat(isMatch("feature/a/b/acme", "feature/**/other")).isFalse();
+        assertThat(isMatch("FEATURE/Acme", "feature/a?me")).isTrue();
+    }
+
+    @Test
+    void index_matches_the_same_exceptions_of_each_named() throws Exception {
+        List<Named> namedExceptions = Arrays.asList( //
+            new Named("master", null), //
+            new Named("MASTER,develop", null), //
+            new Named("support/*", null), //
+            new Named("support/**,release/*", null), //
+            new Named("!feature/**", null), //
+            new Named("*/hotfix-?", null), //
+            new Named("feature/*,\\!weird", null));
+        NamedExceptionsIndex index = new NamedExceptionsIndex(namedExceptions);
+
+        for (String branch : new String[] { "master", "Master", "develop", "support/1.x", "support/1.x/fix", "release/2.0",
+                                            "feature/acme", "feature", "bugfix/hotfix-1", "!weird", "other" }) {
+            BitSet expected = new BitSet();
+            for (int i = 0; i < namedExceptions.size(); i++) {
+                if (namedExceptions.get(i).isMatch(new SCMHead(branch))) {
+                    expected.set(i);
+                }
+            }
+            assertThat(index.matches(branch)).describedAs(branch).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void resolved_properties_are_cached_by_branch_name() throws Exception {
+        BranchProperty defaultProp = Mockito.mock(BranchProperty.class);
+        BranchProperty prop1 = Mockito.mock(BranchProperty.class);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[] { defaultProp }, //
+            new Named[] { new Named("master", new BranchProperty[] { prop1 }) });
+        BranchPropertyStrategyMetrics metrics = BranchPropertyStrategyMetrics.get();
+        long globalHits = metrics.getCacheHits();
+        long globalMisses = metrics.getCacheMisses();
+
+        List<BranchProperty> matches = strategy.getPropertiesFor(new SCMHead("master"));
+        assertThat(strategy.getPropertiesFor(new SCMHead("master"))).isSameAs(matches);
+        assertThat(strategy.getPropertiesFor(new SCMHead("develop"))).containsExactly(defaultProp);
+        assertThat(strategy.getCacheHits()).isEqualTo(1);
+        assertThat(strategy.getCacheMisses()).isEqualTo(2);
+        assertThat(metrics.getCacheHits() - globalHits).isEqualTo(1);
+        assertThat(metrics.getCacheMisses() - globalMisses).isEqualTo(2);
+
+        strategy.clearCache();
+        assertThat(strategy.getPropertiesFor(new SCMHead("master"))).isNotSameAs(matches).containsExactly(prop1);
+    }
+
+    @Test
+    void exception_hits_are_counted_per_exception_of_the_strategy() throws Exception {
+        BranchProperty prop1 = Mockito.mock(BranchProperty.class);
+        BranchProperty prop2 = Mockito.mock(BranchProperty.class);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[0], //
+            new Named[] { //
+                          new Named("master", new BranchProperty[] { prop1 }), //
+                          new Named("release/*", new BranchProperty[] { prop2 }), //
+                          new Named("master", new BranchProperty[] { prop2 }), //
+            });
+
+        strategy.getPropertiesFor(new SCMHead("master"));
+        // served from the cache
+        strategy.getPropertiesFor(new SCMHead("master"));
+        assertThat(strategy.getExceptionHits()).containsExactly(1L, 0L, 1L);
+
+        strategy.resetExceptionHits();
+        assertThat(strategy.getExceptionHits()).containsExactly(0L, 0L, 0L);
+    }
+
+    @Test
+    void bulk_evaluation_returns_the_properties_of_each_head() throws Exception {
+        BranchProperty defaultProp = Mockito.mock(BranchProperty.class);
+        BranchProperty prop1 = Mockito.mock(BranchProperty.class);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[] { defaultProp }, //
+            new Named[] { new Named("feature/*", new BranchProperty[] { prop1 }) });
+
+        List<SCMHead> heads = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            heads.add(new SCMHead((i % 2 == 0 ? "feature/" : "bugfix/") + i));
+        }
+        Map<SCMHead, List<BranchProperty>> result = strategy.getPropertiesFor(heads);
+
+        assertThat(result.keySet()).containsExactlyElementsOf(heads);
+        for (SCMHead head : heads) {
+            assertThat(result.get(head)).containsExactly(head.getName().startsWith("feature/") ? prop1 : defaultProp);
+        }
+    }
+
+    @Test
+    void bulk_evaluation_completes_on_the_calling_thread_when_interrupted() throws Exception {
+        BranchProperty defaultProp = Mockito.mock(BranchProperty.class);
+        BranchProperty prop1 = Mockito.mock(BranchProperty.class);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[] { defaultProp }, //
+            new Named[] { new Named("feature/*", new BranchProperty[] { prop1 }) });
+
+        List<SCMHead> heads = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            heads.add(new SCMHead("feature/" + i));
+        }
+        Thread.currentThread().interrupt();
+        try {
+            Map<SCMHead, List<BranchProperty>> result = strategy.getPropertiesFor(heads);
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+            assertThat(result).hasSize(5000).allSatisfy((head, properties) -> assertThat(properties).containsExactly(prop1));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void preview_streams_the_properties_of_each_branch_name() throws Exception {
+        BranchPropertyDescriptor descriptor = Mockito.mock(BranchPropertyDescriptor.class);
+        Mockito.when(descriptor.getDisplayName()).thenReturn("Test property");
+        BranchProperty defaultProp = Mockito.mock(BranchProperty.class);
+        Mockito.when(defaultProp.getDescriptor()).thenReturn(descriptor);
+        BranchProperty prop1 = Mockito.mock(BranchProperty.class);
+        Mockito.when(prop1.getDescriptor()).thenReturn(descriptor);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[] { defaultProp }, //
+            new Named[] { new Named("release/*", new BranchProperty[] { prop1 }) });
+
+        StringWriter out = new StringWriter();
+        new StrategyPreview(strategy).write(new StringReader("master\n\n release/1.0 \n"), out);
+
+        JSONArray results = JSONArray.fromObject(out.toString());
+        assertThat(results).hasSize(2);
+        assertThat(results.getJSONObject(0).getString("name")).isEqualTo("master");
+        assertThat(results.getJSONObject(0).getJSONArray("exceptions")).isEmpty();
+        assertThat(results.getJSONObject(1).getString("name")).isEqualTo("release/1.0");
+        assertThat(results.getJSONObject(1).getJSONArray("exceptions")).containsExactly("release/*");
+        assertThat(results.getJSONObject(1).getJSONArray("properties").getJSONObject(0).getString("displayName")).isEqualTo("Test property");
+    }
+
+    @Test
+    void preview_ends_with_an_error_element_when_the_evaluation_fails() throws Exception {
+        BranchPropertyDescriptor descriptor = Mockito.mock(BranchPropertyDescriptor.class);
+        Mockito.when(descriptor.getDisplayName()).thenReturn("Test property");
+        BranchProperty defaultProp = Mockito.mock(BranchProperty.class);
+        Mockito.when(defaultProp.getDescriptor()).thenReturn(descriptor);
+        BranchProperty brokenProp = Mockito.mock(BranchProperty.class);
+        Mockito.when(brokenProp.getDescriptor()).thenThrow(new IllegalStateException("broken \"descriptor\""));
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[] { defaultProp }, //
+            new Named[] { new Named("release/*", new BranchProperty[] { brokenProp }) });
+
+        StringWriter out = new StringWriter();
+        new StrategyPreview(strategy).write(new StringReader("master\nrelease/1.0\ndevelop\n"), out);
+
+        JSONArray results = JSONArray.fromObject(out.toString());
+        assertThat(results).hasSize(2);
+        assertThat(results.getJSONObject(0).getString("name")).isEqualTo("master");
+        assertThat(results.getJSONObject(1).getString("error")).isEqualTo("broken \"descriptor\"");
+    }
+
+    @Test
+    void first_match_mode_applies_only_the_first_matching_exception() throws Exception {
+        BranchProperty defaultProp = Mockito.mock(BranchProperty.class);
+        BranchProperty prop1 = Mockito.mock(BranchProperty.class);
+        BranchProperty prop2 = Mockito.mock(BranchProperty.class);
+        BranchProperty prop3 = Mockito.mock(BranchProperty.class);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[] { defaultProp }, //
+            new Named[] { //
+                          new Named("!master", new BranchProperty[] { prop1 }), //
+                          new Named("master,support/*", new BranchProperty[] { prop2 }), //
+                          new Named("master", new BranchProperty[] { prop3 }), //
+            });
+        strategy.setEvaluationMode(EvaluationMode.FIRST_MATCH);
+
+        assertThat(strategy.getPropertiesFor(new SCMHead("master"))).containsExactly(prop2);
+        assertThat(strategy.getPropertiesFor(new SCMHead("support/1.x"))).containsExactly(prop1);
+    }
+
+    @Test
+    void ordered_merge_mode_keeps_one_property_of_each_type() throws Exception {
+        BranchProperty defaultProp = Mockito.mock(BranchProperty.class);
+        BranchProperty prop1 = Mockito.mock(ParameterBranchProperty.class);
+        BranchProperty prop2 = Mockito.mock(ParameterBranchProperty.class);
+        BranchProperty prop3 = Mockito.mock(BranchProperty.class);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[] { defaultProp }, //
+            new Named[] { //
+                          new Named("master", new BranchProperty[] { prop1 }), //
+                          new Named("master,support/*", new BranchProperty[] { prop2, prop3 }), //
+            });
+        strategy.setEvaluationMode(EvaluationMode.ORDERED_MERGE);
+
+        assertThat(strategy.getPropertiesFor(new SCMHead("master"))).containsExactly(prop1, prop3);
+        assertThat(strategy.getPropertiesFor(new SCMHead("support/1.x"))).containsExactly(prop2, prop3);
+    }
+
+    @Test
+    void parametric_properties_of_the_same_type_are_merged() throws Exception {
+        ParameterDefinition version1 = new StringParameterDefinition("VERSION", "1");
+        ParameterDefinition debug = new StringParameterDefinition("DEBUG", "false");
+        ParameterDefinition version2 = new StringParameterDefinition("VERSION", "2");
+        ParameterDefinition target = new StringParameterDefinition("TARGET", "test");
+
+        ParameterBranchProperty prop1 = new ParameterBranchProperty("Run 1", false, null);
+        prop1.setParameterDefinitions(Arrays.asList(version1, debug));
+        ParameterBranchProperty prop2 = new ParameterBranchProperty("Run 2", true, null);
+        prop2.setParameterDefinitions(Arrays.asList(version2, target));
+        ReleaseBranchProperty release = new ReleaseBranchProperty("Release", null);
+        release.setParameterDefinitions(Arrays.asList(version2));
+        BranchProperty other = Mockito.mock(BranchProperty.class);
+
+        MultiNamedExceptionsBranchPropertyStrategy strategy = new MultiNamedExceptionsBranchPropertyStrategy( //
+            new BranchProperty[0], //
+            new Named[] { //
+                          new Named("master", new BranchProperty[] { prop1, other }), //
+                          new Named("master,support/*", new BranchProperty[] { release, prop2 }), //
+            });
+
+        List<BranchProperty> properties = strategy.getPropertiesFor(new SCMHead("master"));
+        assertThat(properties).hasSize(3);
+        assertThat(properties.get(0)).isExactlyInstanceOf(ParameterBranchProperty.class);
+        ParameterBranchProperty merged = (ParameterBranchProperty) properties.get(0);
+        // settings of the first property win
+        assertThat(merged.getActionLabel()).isEqualTo("Run 1");
+        assertThat(merged.getUseBadge()).isFalse();
+        // definitions are merged by name, first one wins
+        assertThat(merged.getParameterDefinitions()).containsExactly(version1, debug, target);
+        assertThat(properties.get(1)).isSameAs(other);
+        assertThat(properties.get(2)).isSameAs(release);
+
+        // original properties are not modified
+        assertThat(prop1.getParameterDefinitions()).containsExactly(version1, debug);
+        assertThat(strategy.getPropertiesFor(new SCMHead("support/1.x"))).containsExactly(release, prop2);
+    }
+
+    @Test
+    void parametric_properties_of_different_types_are_not_merged() throws Exception {
+        ParameterBranchProperty prop = new ParameterBranchProperty("Run", false, null);
+        ReleaseBranchProperty release1 = new ReleaseBranchProperty("Release", "Release #$VERSION");
+        release1.setParameterDefinitions(Arrays.asList(new StringParameterDefinition("VERSION", "1")));
+        ReleaseBranchProperty release2 = new ReleaseBranchProperty("Release", null);
+        release2.setParameterDefinitions(Arrays.asList(new StringParameterDefinition("NEXT_VERSION", "2")));
+
+        assertThatThrownBy(() -> prop.merge(release1)).isInstanceOf(IllegalArgumentException.class);
+
+        ParameterBranchProperty merged = release1.merge(release2);
+        assertThat(merged).isExactlyInstanceOf(ReleaseBranchProperty.class);
+        assertThat(merged.getBadgeTemplate()).isEqualTo("Release #$VERSION");
+        assertThat(merged.getParameterDefinitions()).extracting(ParameterDefinition::getName).containsExactly("VERSION", "NEXT_VERSION");
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.model.StringParameterDefinition;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.htmlunit.HttpMethod;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@WithJenkins
+class ParameterActionRequestTest {
+
+    @Test
+    void submit_matrix_rejects_an_invalid_set_before_accounting_the_rate_limit(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        // own action type so that other tests do not share the rate limit
+        ParameterAction action = new ParameterAction(project, "Run", null, versionDefinition()) {
+        };
+        action.setQuietPeriod(3600);
+        project.addAction(action);
+        ParametricRunConfiguration.get().setRateLimit(2);
+
+        WebResponse response = post(j, project, "submitMatrix", "{\"parameterSets\": [" + parameterSet("1.0") + ", 5]}");
+        assertThat(response.getStatusCode()).isEqualTo(400);
+
+        response = post(j, project, "submitMatrix", "{\"parameterSets\": [" + parameterSet("1.0") + ", {\"parameter\": [\"VERSION\"]}]}");
+        assertThat(response.getStatusCode()).isEqualTo(400);
+
+        // the rejected requests did not consume the two builds allowed
+        response = post(j, project, "submitMatrix", "{\"parameterSets\": [" + parameterSet("1.0") + ", " + parameterSet("2.0") + "]}");
+        assertThat(response.getStatusCode()).isEqualTo(200);
+        JSONArray items = JSONArray.fromObject(response.getContentAsString());
+        assertThat(items).hasSize(2);
+        assertThat(items.getJSONObject(0).getInt("status")).isEqualTo(201);
+        assertThat(items.getJSONObject(1).getInt("status")).isEqualTo(201);
+        assertThat(j.jenkins.getQueue().getItems()).hasSize(2);
+    }
+
+    @Test
+    void submit_matrix_reports_the_status_of_each_set(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        ParameterAction action = new ParameterAction(project, "Run", null, versionDefinition());
+        action.setQuietPeriod(3600);
+        action.setMaxConcurrentBuilds(1);
+        project.addAction(action);
+
+        WebResponse response = post(j, project, "submitMatrix", "{\"parameterSets\": [" + parameterSet("1.0") + ", " + parameterSet("2.0") + "]}");
+        assertThat(response.getStatusCode()).isEqualTo(200);
+
+        JSONArray items = JSONArray.fromObject(response.getContentAsString());
+        assertThat(items).hasSize(2);
+        JSONObject scheduled = items.getJSONObject(0);
+        assertThat(scheduled.getInt("status")).isEqualTo(201);
+        assertThat(scheduled.getLong("id")).isEqualTo(j.jenkins.getQueue().getItem(project).getId());
+        JSONObject refused = items.getJSONObject(1);
+        assertThat(refused.getInt("status")).isEqualTo(503);
+        assertThat(refused.getString("message")).isEqualTo(Messages.ParameterAction_tooManyBuilds(1, project.getFullDisplayName()));
+    }
+
+    @Test
+    void build_with_parameters_answers_created_with_the_queue_item_location(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        ParameterAction action = new ParameterAction(project, "Run", null, versionDefinition());
+        action.setQuietPeriod(3600);
+        project.addAction(action);
+
+        WebResponse response = post(j, project, "buildWithParameters", "{\"VERSION\": \"1.0\"}");
+        assertThat(response.getStatusCode()).isEqualTo(201);
+
+        Queue.Item item = j.jenkins.getQueue().getItem(project);
+        assertThat(item).isNotNull();
+        assertThat(response.getResponseHeaderValue("Location")).endsWith("/" + item.getUrl());
+        assertThat(item.getAction(ParametersAction.class).getParameter("VERSION").getValue()).isEqualTo("1.0");
+
+        response = post(j, project, "buildWithParameters", "{\"MISSING\": \"1.0\"}");
+        assertThat(response.getStatusCode()).isEqualTo(400);
+    }
+
+    @Test
+    void build_with_parameters_streams_the_multipart_values_to_disk(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        ParameterAction action = new ParameterAction(project, "Run", null, versionDefinition());
+        action.setQuietPeriod(3600);
+        project.addAction(action);
+
+        String value = "0123456789".repeat(500);
+        WebRequest request = new WebRequest(new URL(j.getURL(), project.getUrl() + "runWith/buildWithParameters"), HttpMethod.POST);
+        request.setAdditionalHeader("Content-Type", "multipart/form-data; boundary=XYZ");
+        request.setRequestBody("--XYZ\r\n" //
+            + "Content-Disposition: form-data; name=\"VERSION\"; filename=\"version.txt\"\r\n" //
+            + "Content-Type: text/plain\r\n\r\n" //
+            + value + "\r\n" //
+            + "--XYZ--\r\n");
+        WebResponse response = j.createWebClient().loadWebResponse(request);
+        assertThat(response.getStatusCode()).isEqualTo(201);
+
+        ParametersAction parameters = j.jenkins.getQueue().getItem(project).getAction(ParametersAction.class);
+        assertThat(parameters.getParameter("VERSION")).isInstanceOf(FileBackedParameterValue.class);
+        FileBackedParameterValue version = (FileBackedParameterValue) parameters.getParameter("VERSION");
+        assertThat(version.getLength()).isEqualTo(value.length());
+        assertThat(version.getPreview()).isEqualTo(value.substring(0, SafeParametersAction.PREVIEW_LENGTH));
+        assertThat(version.getFile()).hasContent(value);
+        assertThat(version.getValue()).isEqualTo(value);
+    }
+
+    @Test
+    void build_with_parameters_answers_too_many_requests_over_the_rate_limit(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        // own action type so that other tests do not share the rate limit
+        ParameterAction action = new ParameterAction(project, "Run", null, versionDefinition()) {
+        };
+        action.setQuietPeriod(3600);
+        project.addAction(action);
+        ParametricRunConfiguration.get().setRateLimit(1);
+        ParametricRunConfiguration.get().setRateLimitPeriod(3600);
+
+        // an invalid request does not consume the build allowed
+        WebResponse response = post(j, project, "buildWithParameters", "{\"MISSING\": \"1.0\"}");
+        assertThat(response.getStatusCode()).isEqualTo(400);
+
+        response = post(j, project, "buildWithParameters", "{\"VERSION\": \"1.0\"}");
+        assertThat(response.getStatusCode()).isEqualTo(201);
+
+        response = post(j, project, "buildWithParameters", "{\"VERSION\": \"2.0\"}");
+        assertThat(response.getStatusCode()).isEqualTo(429);
+        assertThat(Long.parseLong(response.getResponseHeaderValue("Retry-After"))).isPositive();
+        assertThat(j.jenkins.getQueue().getItems()).hasSize(1);
+    }
+
+    @Test
+    void submit_matrix_rejects_more_sets_than_the_rate_limit_allows(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        // own action type so that other tests do not share the rate limit
+        ParameterAction action = new ParameterAction(project, "Run", null, versionDefinition()) {
+        };
+        action.setQuietPeriod(3600);
+        project.addAction(action);
+        ParametricRunConfiguration.get().setRateLimit(2);
+
+        WebResponse response = post(j, project, "submitMatrix", "{\"parameterSets\": [" + parameterSet("1.0") + ", " + parameterSet("2.0") + ", "
+                + parameterSet("3.0") + "]}");
+        assertThat(response.getStatusCode()).isEqualTo(413);
+        assertThat(response.getResponseHeaderValue("Retry-After")).isNull();
+        assertThat(j.jenkins.getQueue().getItems()).isEmpty();
+    }
+
+    private static FreeStyleProject createProject(JenkinsRule j) throws Exception {
+        // the requests are posted without crumb
+        j.jenkins.setCrumbIssuer(null);
+        FreeStyleProject project = j.createFreeStyleProject();
+        project.addProperty(new ParametersDefinitionProperty(Arrays.<ParameterDefinition> asList(new StringParameterDefinition("BRANCH", "master"))));
+        return project;
+    }
+
+    private static List<ParameterDefinition> versionDefinition() {
+        return Arrays.<ParameterDefinition> asList(new StringParameterDefinition("VERSION", "0.1"));
+    }
+
+    private static String parameterSet(String version) {
+        return "{\"parameter\": [{\"name\": \"VERSION\", \"value\": \"" + version + "\"}]}";
+    }
+
+    private static WebResponse post(JenkinsRule j, Job<?, ?> job, String method, String json) throws Exception {
+        WebRequest request = new WebRequest(new URL(j.getURL(), job.getUrl() + "runWith/" + method), HttpMethod.POST);
+        request.setAdditionalHeader("Content-Type", "application/json");
+        request.setRequestBody(json);
+        return j.createWebClient().loadWebResponse(request);
+    }
+}
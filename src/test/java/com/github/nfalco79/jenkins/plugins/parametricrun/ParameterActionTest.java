@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import hudson.model.Descriptor;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParameterActionTest {
+
+    @Test
+    void action_definitions_take_precedence_over_the_job_ones() throws Exception {
+        StringParameterDefinition actionVersion = new StringParameterDefinition("VERSION", "2.0");
+        StringParameterDefinition jobVersion = new StringParameterDefinition("VERSION", "1.0");
+        StringParameterDefinition jobBranch = new StringParameterDefinition("BRANCH", "master");
+
+        Job<?, ?> job = mockJob(new ParametersDefinitionProperty(jobVersion, jobBranch));
+        ParameterAction action = new ParameterAction(job, "Run", null, Arrays.<ParameterDefinition> asList(actionVersion));
+
+        assertThat(action.getParameterDefinition("VERSION")).isSameAs(actionVersion);
+        assertThat(action.getParameterDefinition("BRANCH")).isSameAs(jobBranch);
+        assertThat(action.getParameterDefinition("MISSING")).isNull();
+    }
+
+    @Test
+    void resolution_plan_is_rebuilt_when_the_job_property_is_replaced() throws Exception {
+        StringParameterDefinition version = new StringParameterDefinition("VERSION", "1.0");
+        StringParameterDefinition branch = new StringParameterDefinition("BRANCH", "master");
+
+        Job<?, ?> job = mockJob(new ParametersDefinitionProperty(version));
+        ParameterAction action = new ParameterAction(job, "Run", null, null);
+
+        assertThat(action.getParameterDefinition("VERSION")).isSameAs(version);
+        action.getDescriptorByName("hudson.model.StringParameterDefinition");
+        action.getDescriptorByName("hudson.model.StringParameterDefinition");
+        Mockito.verify(job, Mockito.times(1)).getDescriptorByName("hudson.model.StringParameterDefinition");
+
+        Mockito.doReturn(new ParametersDefinitionProperty(branch)).when(job).getProperty(ParametersDefinitionProperty.class);
+
+        assertThat(action.getParameterDefinition("VERSION")).isNull();
+        assertThat(action.getParameterDefinition("BRANCH")).isSameAs(branch);
+        action.getDescriptorByName("hudson.model.StringParameterDefinition");
+        Mockito.verify(job, Mockito.times(2)).getDescriptorByName("hudson.model.StringParameterDefinition");
+
+        Mockito.doReturn(null).when(job).getProperty(ParametersDefinitionProperty.class);
+
+        assertThat(action.getParameterDefinition("BRANCH")).isNull();
+    }
+
+    @Test
+    void resolution_plan_is_rebuilt_when_the_definitions_list_is_replaced() throws Exception {
+        StringParameterDefinition version = new StringParameterDefinition("VERSION", "1.0");
+        StringParameterDefinition branch = new StringParameterDefinition("BRANCH", "master");
+        List<ParameterDefinition> definitions = Arrays.<ParameterDefinition> asList(version);
+        List<ParameterDefinition> newDefinitions = Arrays.<ParameterDefinition> asList(branch);
+
+        ParametersDefinitionProperty property = Mockito.mock(ParametersDefinitionProperty.class);
+        Mockito.when(property.getParameterDefinitions()).thenReturn(definitions);
+        Job<?, ?> job = mockJob(property);
+        ParameterAction action = new ParameterAction(job, "Run", null, null);
+
+        assertThat(action.getParameterDefinition("VERSION")).isSameAs(version);
+
+        Mockito.when(property.getParameterDefinitions()).thenReturn(newDefinitions);
+
+        assertThat(action.getParameterDefinition("VERSION")).isNull();
+        assertThat(action.getParameterDefinition("BRANCH")).isSameAs(branch);
+    }
+
+    private static Job<?, ?> mockJob(ParametersDefinitionProperty property) {
+        Job<?, ?> job = Mockito.mock(Job.class);
+        Mockito.when(job.getFullName()).thenReturn("folder/master");
+        Mockito.doReturn(property).when(job).getProperty(ParametersDefinitionProperty.class);
+        // a null descriptor would not be cached
+        Mockito.doReturn(Mockito.mock(Descriptor.class)).when(job).getDescriptorByName(Mockito.anyString());
+        return job;
+    }
+}
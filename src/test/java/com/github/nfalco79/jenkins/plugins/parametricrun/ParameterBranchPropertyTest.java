@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.release.ReleaseBranchProperty;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import hudson.model.StringParameterDefinition;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParameterBranchPropertyTest {
+
+    @Test
+    void each_created_action_has_the_job_and_the_settings_of_the_property() throws Exception {
+        ParameterBranchProperty property = new ParameterBranchProperty("Run", false, null);
+        property.setLazyAction(true);
+        property.setQuietPeriod(30);
+        property.setMaxConcurrentBuilds(2);
+        property.setParameterDefinitions(Arrays.<ParameterDefinition> asList(new StringParameterDefinition("VERSION", "1.0")));
+
+        Job<?, ?> job = mockJob("folder/master");
+        ParameterAction action = property.createAction(job);
+        assertThat(action.getJob()).isSameAs(job);
+        assertThat(action.getQuietPeriod()).isEqualTo(30);
+        assertThat(action.getMaxConcurrentBuilds()).isEqualTo(2);
+        assertThat(action.getParameterDefinitions()).extracting(ParameterDefinition::getName).containsExactly("VERSION");
+
+        // nothing is kept by the property between requests
+        assertThat(property.createAction(job)).isNotSameAs(action);
+    }
+
+    @Test
+    void merge_fails_for_a_subclass_that_does_not_override_copy() throws Exception {
+        ParameterBranchProperty property = new NoCopyBranchProperty();
+        ParameterBranchProperty other = new NoCopyBranchProperty();
+
+        assertThatThrownBy(() -> property.merge(other)) //
+            .isInstanceOf(IllegalStateException.class) //
+            .hasMessageContaining(NoCopyBranchProperty.class.getName());
+    }
+
+    @Test
+    void merge_keeps_the_type_of_a_subclass_that_overrides_copy() throws Exception {
+        ReleaseBranchProperty property = new ReleaseBranchProperty("Release", null);
+        property.setParameterDefinitions(Arrays.<ParameterDefinition> asList(new StringParameterDefinition("VERSION", "1.0")));
+        ReleaseBranchProperty other = new ReleaseBranchProperty("Release", null);
+        other.setParameterDefinitions(Arrays.<ParameterDefinition> asList(new StringParameterDefinition("BRANCH", "master")));
+
+        ParameterBranchProperty merged = property.merge(other);
+        assertThat(merged).isExactlyInstanceOf(ReleaseBranchProperty.class);
+        assertThat(merged.getParameterDefinitions()).extracting(ParameterDefinition::getName).containsExactly("VERSION", "BRANCH");
+    }
+
+    private static class NoCopyBranchProperty extends ParameterBranchProperty {
+        NoCopyBranchProperty() {
+            super("Run", false, null);
+        }
+    }
+
+    private static Job<?, ?> mockJob(String fullName) {
+        Job<?, ?> job = Mockito.mock(Job.class);
+        Mockito.when(job.getFullName()).thenReturn(fullName);
+        return job;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterValue;
+import hudson.model.Queue;
+import hudson.model.StringParameterValue;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@WithJenkins
+class ParametricBuildAdmissionTest {
+
+    @Test
+    void slot_is_released_when_the_bound_item_is_cancelled(JenkinsRule j) throws Exception {
+        ParametricBuildAdmission admission = ParametricBuildAdmission.get();
+        FreeStyleProject project = j.createFreeStyleProject("queued");
+        Queue.Item item = schedule(project, 3600, "1.0");
+
+        assertThat(admission.tryAcquire(project.getFullName(), 1)).isTrue();
+        admission.bind(project.getFullName(), item.getId());
+        assertThat(admission.getReserved(project.getFullName())).isEqualTo(1);
+        assertThat(admission.tryAcquire(project.getFullName(), 1)).isFalse();
+
+        j.jenkins.getQueue().cancel(item);
+        assertThat(admission.getReserved(project.getFullName())).isZero();
+    }
+
+    @Test
+    void slot_is_released_when_the_item_left_before_the_bind(JenkinsRule j) throws Exception {
+        ParametricBuildAdmission admission = ParametricBuildAdmission.get();
+        FreeStyleProject project = j.createFreeStyleProject("left");
+
+        Queue.Item cancelled = schedule(project, 3600, "1.0");
+        j.jenkins.getQueue().cancel(cancelled);
+        assertThat(admission.tryAcquire(project.getFullName(), 1)).isTrue();
+        admission.bind(project.getFullName(), cancelled.getId());
+        assertThat(admission.getReserved(project.getFullName())).isZero();
+
+        Queue.Item completed = schedule(project, 0, "2.0");
+        FreeStyleBuild build = j.assertBuildStatusSuccess(completed.getFuture());
+        assertThat(admission.tryAcquire(project.getFullName(), 1)).isTrue();
+        admission.bind(project.getFullName(), build.getQueueId());
+        assertThat(admission.getReserved(project.getFullName())).isZero();
+    }
+
+    @Test
+    void counters_are_rebuilt_from_the_queue(JenkinsRule j) throws Exception {
+        ParametricBuildAdmission admission = ParametricBuildAdmission.get();
+        FreeStyleProject project = j.createFreeStyleProject("rebuilt");
+        Queue.Item item = schedule(project, 3600, "1.0");
+        schedule(project, 3600, "2.0");
+        // not requested through a parametric action
+        FreeStyleProject other = j.createFreeStyleProject("other");
+        other.scheduleBuild2(3600);
+
+        admission.rebuild();
+        assertThat(admission.getReserved(project.getFullName())).isEqualTo(2);
+        assertThat(admission.getReserved(other.getFullName())).isZero();
+
+        j.jenkins.getQueue().cancel(item);
+        assertThat(admission.getReserved(project.getFullName())).isEqualTo(1);
+    }
+
+    @Test
+    void slots_follow_the_renamed_job(JenkinsRule j) throws Exception {
+        ParametricBuildAdmission admission = ParametricBuildAdmission.get();
+        FreeStyleProject project = j.createFreeStyleProject("renamed");
+        Queue.Item item = schedule(project, 3600, "1.0");
+        assertThat(admission.tryAcquire(project.getFullName(), 1)).isTrue();
+        admission.bind(project.getFullName(), item.getId());
+
+        project.renameTo("moved");
+        assertThat(admission.getReserved("renamed")).isZero();
+        assertThat(admission.getReserved("moved")).isEqualTo(1);
+
+        j.jenkins.getQueue().cancel(item);
+        assertThat(admission.getReserved("moved")).isZero();
+    }
+
+    private static Queue.Item schedule(FreeStyleProject project, int quietPeriod, String version) throws Exception {
+        SafeParametersAction parameters = new SafeParametersAction(Arrays.<ParameterValue> asList(new StringParameterValue("VERSION", version)));
+        return Queue.getInstance().schedule2(project, quietPeriod, Arrays.<Action> asList(parameters, new CauseAction(new Cause.UserIdCause()))).getItem();
+    }
+}
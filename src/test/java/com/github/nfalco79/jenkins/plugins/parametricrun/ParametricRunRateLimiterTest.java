@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class ParametricRunRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final ParametricRunRateLimiter limiter = new ParametricRunRateLimiter(now::get);
+
+    @Test
+    void requests_are_spaced_by_the_emission_interval() throws Exception {
+        // 2 requests every 60 seconds, one each 30 seconds once the burst is used
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 2, 60)).isZero();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 2, 60)).isZero();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 2, 60)).isEqualTo(30);
+
+        advance(TimeUnit.MILLISECONDS.toNanos(29_500));
+        // rounded up, retrying after the truncated value would be refused
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 2, 60)).isEqualTo(1);
+
+        advance(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 2, 60)).isZero();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 2, 60)).isEqualTo(30);
+    }
+
+    @Test
+    void a_burst_costs_as_many_requests() throws Exception {
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 3, 3, 60)).isZero();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 3, 60)).isEqualTo(20);
+
+        // an idle user gets the whole burst back, not more
+        advance(TimeUnit.MINUTES.toNanos(10));
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 2, 3, 60)).isZero();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 2, 3, 60)).isEqualTo(20);
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 3, 60)).isZero();
+    }
+
+    @Test
+    void users_and_action_types_are_limited_apart() throws Exception {
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 1, 60)).isZero();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 1, 60)).isEqualTo(60);
+        assertThat(limiter.tryAcquire(ParameterAction.class, "bob", 1, 1, 60)).isZero();
+        assertThat(limiter.tryAcquire(ParameterBranchProperty.class, "alice", 1, 1, 60)).isZero();
+    }
+
+    @Test
+    void requests_over_the_limit_are_never_allowed() throws Exception {
+        assertThatIllegalArgumentException().isThrownBy(() -> limiter.tryAcquire(ParameterAction.class, "alice", 3, 2, 60));
+    }
+
+    @Test
+    void purge_drops_only_idle_users() throws Exception {
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 1, 60)).isZero();
+        limiter.purge();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 1, 60)).isEqualTo(60);
+    }
+
+    @Test
+    void update_is_not_lost_when_the_entry_is_purged_meanwhile() throws Exception {
+        AtomicBoolean purge = new AtomicBoolean();
+        AtomicReference<ParametricRunRateLimiter> ref = new AtomicReference<>();
+        ParametricRunRateLimiter limiter = new ParametricRunRateLimiter(() -> {
+            if (purge.getAndSet(false)) {
+                // runs between the lookup of the entry and its update
+                ref.get().purge();
+            }
+            return now.get();
+        });
+        ref.set(limiter);
+
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 1, 60)).isZero();
+        advance(TimeUnit.SECONDS.toNanos(61));
+
+        // the entry is idle and it is purged while the request is accounted
+        purge.set(true);
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 1, 60)).isZero();
+        assertThat(purge).isFalse();
+        assertThat(limiter.tryAcquire(ParameterAction.class, "alice", 1, 1, 60)).isEqualTo(60);
+    }
+
+    private void advance(long nanos) {
+        now.addAndGet(nanos);
+    }
+}
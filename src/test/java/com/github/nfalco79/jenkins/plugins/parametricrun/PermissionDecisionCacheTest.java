@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.Job;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+import org.mockito.Mockito;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@WithJenkins
+class PermissionDecisionCacheTest {
+
+    @Test
+    void only_the_saved_items_lose_their_decisions(JenkinsRule j) throws Exception {
+        PermissionDecisionCache cache = PermissionDecisionCache.get();
+        MockFolder folder = j.createFolder("folder");
+        FreeStyleProject job = folder.createProject(FreeStyleProject.class, "job");
+        FreeStyleProject sibling = folder.createProject(FreeStyleProject.class, "sibling");
+        FreeStyleProject other = j.createFreeStyleProject("other");
+        FreeStyleBuild build = j.buildAndAssertSuccess(job);
+        cache.invalidate();
+
+        decide(job, sibling, other);
+        assertThat(isCached(cache, job)).isTrue();
+
+        // builds never change permissions
+        build.save();
+        assertThat(isCached(cache, job)).isTrue();
+
+        job.save();
+        assertThat(isCached(cache, job)).isFalse();
+        assertThat(isCached(cache, sibling)).isTrue();
+        assertThat(isCached(cache, other)).isTrue();
+
+        decide(job, sibling, other);
+        folder.save();
+        assertThat(isCached(cache, job)).isFalse();
+        assertThat(isCached(cache, sibling)).isFalse();
+        assertThat(isCached(cache, other)).isTrue();
+
+        decide(job, sibling, other);
+        j.jenkins.save();
+        assertThat(isCached(cache, job)).isFalse();
+        assertThat(isCached(cache, other)).isFalse();
+    }
+
+    @Test
+    void folder_prefix_does_not_match_other_names(JenkinsRule j) throws Exception {
+        PermissionDecisionCache cache = PermissionDecisionCache.get();
+        FreeStyleProject job = j.createFreeStyleProject("app");
+        FreeStyleProject similar = j.createFreeStyleProject("application");
+        cache.invalidate();
+
+        decide(job, similar);
+        cache.invalidate("app");
+        assertThat(isCached(cache, job)).isFalse();
+        assertThat(isCached(cache, similar)).isTrue();
+    }
+
+    @Test
+    void decision_taken_while_the_folder_is_saved_is_not_cached(JenkinsRule j) throws Exception {
+        PermissionDecisionCache cache = PermissionDecisionCache.get();
+        cache.invalidate();
+
+        AtomicBoolean saving = new AtomicBoolean(true);
+        Job<?, ?> job = Mockito.mock(Job.class);
+        Mockito.when(job.getFullName()).thenReturn("folder/job");
+        Mockito.when(job.hasPermission(Item.BUILD)).thenAnswer(invocation -> {
+            // the folder is saved while the authorization strategy is asked
+            if (saving.getAndSet(false)) {
+                cache.invalidate("folder");
+            }
+            return true;
+        });
+
+        assertThat(cache.hasPermission(job, Item.BUILD)).isTrue();
+        assertThat(isCached(cache, job)).isFalse();
+        assertThat(isCached(cache, job)).isTrue();
+    }
+
+    private static void decide(Job<?, ?>... jobs) {
+        for (Job<?, ?> job : jobs) {
+            PermissionDecisionCache.get().hasPermission(job, Item.BUILD);
+        }
+    }
+
+    /*
+     * Asks the decision again, a cached one counts as a hit.
+     */
+    private static boolean isCached(PermissionDecisionCache cache, Job<?, ?> job) {
+        long hits = cache.getHits();
+        cache.hasPermission(job, Item.BUILD);
+        return cache.getHits() > hits;
+    }
+}
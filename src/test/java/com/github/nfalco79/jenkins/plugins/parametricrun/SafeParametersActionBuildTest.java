@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import hudson.model.Action;
+import hudson.model.BooleanParameterValue;
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterValue;
+import hudson.model.Run;
+import hudson.model.StringParameterValue;
+import hudson.model.TaskListener;
+import hudson.model.TextParameterValue;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.lang.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@WithJenkins
+class SafeParametersActionBuildTest {
+
+    /**
+     * Longer than the default threshold of the values moved on disk.
+     */
+    private static final String LARGE_VALUE = StringUtils.repeat("0123456789", 7000);
+
+    @Test
+    void index_follows_the_values_moved_on_disk_and_the_reload(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        SafeParametersAction action = newAction();
+        // lookups before the build is started build the index
+        assertThat(action.getParameter("LARGE")).isInstanceOf(StringParameterValue.class);
+        List<ParameterValue> before = action.getParameters();
+        assertThat(before).hasSize(2);
+
+        FreeStyleBuild build = build(j, project, action);
+        assertThat(build.getAction(SafeParametersAction.class)).isSameAs(action);
+        // the list given out before is never changed, a new one replaces it
+        assertThat(before.get(1)).isExactlyInstanceOf(StringParameterValue.class);
+        assertThat(action.getParameters()).isNotSameAs(before);
+        assertThat(action.getParameter("LARGE")).isInstanceOf(FileBackedParameterValue.class).isSameAs(action.getParameters().get(1));
+        assertThat(action.getParameter("LARGE").getValue()).isEqualTo(LARGE_VALUE);
+        assertThat(action.getParameter("VERSION").getValue()).isEqualTo("1.0");
+
+        j.jenkins.reload();
+        build = j.jenkins.getItemByFullName("project", FreeStyleProject.class).getBuildByNumber(build.getNumber());
+        SafeParametersAction loaded = build.getAction(SafeParametersAction.class);
+        assertThat(loaded.getParameter("LARGE")).isInstanceOf(FileBackedParameterValue.class).isSameAs(loaded.getParameters().get(1));
+        assertThat(loaded.getParameter("LARGE").getValue()).isEqualTo(LARGE_VALUE);
+        assertThat(loaded.getParameter("VERSION").getValue()).isEqualTo("1.0");
+    }
+
+    @Test
+    void environment_follows_the_values_moved_on_disk_and_the_reload(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        SafeParametersAction action = newAction();
+        // computed before the build is started
+        assertThat(action.getEnvironment()).containsEntry("LARGE", LARGE_VALUE).doesNotContainKey("LARGE_FILE");
+
+        FreeStyleBuild build = build(j, project, action);
+        File file = new File(build.getRootDir(), "parameters/1.txt");
+        assertThat(file).hasContent(LARGE_VALUE);
+        // only the value in memory, the controller path is not exported
+        String preview = LARGE_VALUE.substring(0, SafeParametersAction.PREVIEW_LENGTH);
+        assertThat(action.getEnvironment()).containsEntry("VERSION", "1.0") //
+            .containsEntry("LARGE", preview) //
+            .doesNotContainKey("LARGE_FILE");
+        assertThat(build.getEnvironment(TaskListener.NULL)).containsEntry("LARGE", preview).doesNotContainKey("LARGE_FILE");
+
+        j.jenkins.reload();
+        build = j.jenkins.getItemByFullName("project", FreeStyleProject.class).getBuildByNumber(build.getNumber());
+        assertThat(build.getAction(SafeParametersAction.class).getEnvironment()).containsEntry("VERSION", "1.0") //
+            .containsEntry("LARGE", preview) //
+            .doesNotContainKey("LARGE_FILE");
+    }
+
+    @Test
+    void only_string_and_text_values_are_moved_on_disk(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        SafeParametersAction action = new SafeParametersAction(Arrays.<ParameterValue> asList( //
+            new TextParameterValue("TEXT", LARGE_VALUE), //
+            new TaggedStringParameterValue("TAGGED", LARGE_VALUE, "tag")));
+
+        build(j, project, action);
+        assertThat(action.getParameter("TEXT")).isInstanceOf(FileBackedParameterValue.class);
+        // a subclass may have more state than the value
+        assertThat(action.getParameter("TAGGED")).isInstanceOf(TaggedStringParameterValue.class);
+        assertThat(((TaggedStringParameterValue) action.getParameter("TAGGED")).tag).isEqualTo("tag");
+    }
+
+    @Test
+    void builds_saved_in_the_reflection_format_are_loaded(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        File buildDir = new File(project.getBuildDir(), "1");
+        assertThat(buildDir.mkdirs()).isTrue();
+        try (InputStream fixture = getClass().getResourceAsStream("SafeParametersActionBuildTest/legacy-build.xml")) {
+            Files.copy(fixture, new File(buildDir, "build.xml").toPath());
+        }
+
+        j.jenkins.reload();
+        FreeStyleBuild build = j.jenkins.getItemByFullName("project", FreeStyleProject.class).getBuildByNumber(1);
+        assertLegacyParameters(build.getAction(SafeParametersAction.class));
+
+        // written in the compact format on next save
+        build.save();
+        assertThat(new File(buildDir, "build.xml")).content().contains("format=\"compact\"");
+        j.jenkins.reload();
+        build = j.jenkins.getItemByFullName("project", FreeStyleProject.class).getBuildByNumber(1);
+        assertLegacyParameters(build.getAction(SafeParametersAction.class));
+    }
+
+    @Test
+    void compact_format_keeps_special_characters_and_file_backed_values(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        String special = "a < b && c > \"d\" 'e'\tf";
+        SafeParametersAction action = new SafeParametersAction(Arrays.<ParameterValue> asList( //
+            new StringParameterValue("STRING", special, "first \"line\"\nsecond <line>"), //
+            new TextParameterValue("TEXT", "  leading\n\ntrailing  \n"), //
+            new BooleanParameterValue("BOOLEAN", false), //
+            new StringParameterValue("EMPTY", ""), //
+            new StringParameterValue("LARGE", special + LARGE_VALUE, "large & <value>")));
+
+        FreeStyleBuild build = build(j, project, action);
+        String xml = Run.XSTREAM2.toXML(action);
+        assertThat(xml).contains("format=\"compact\"");
+        SafeParametersAction copy = (SafeParametersAction) Run.XSTREAM2.fromXML(xml);
+        copy.onLoad(build);
+        assertCompactParameters(copy, special);
+
+        j.jenkins.reload();
+        build = j.jenkins.getItemByFullName("project", FreeStyleProject.class).getBuildByNumber(build.getNumber());
+        assertCompactParameters(build.getAction(SafeParametersAction.class), special);
+    }
+
+    private static void assertLegacyParameters(SafeParametersAction action) {
+        assertThat(action.getParameters()).hasSize(3);
+        assertThat(action.getParameter("VERSION")).isInstanceOf(StringParameterValue.class);
+        assertThat(action.getParameter("VERSION").getValue()).isEqualTo("1.0 <beta> & more");
+        assertThat(action.getParameter("VERSION").getDescription()).isEqualTo("The \"release\" version");
+        assertThat(action.getParameter("DRY_RUN").getValue()).isEqualTo(Boolean.TRUE);
+        assertThat(action.getParameter("NOTES")).isInstanceOf(TextParameterValue.class);
+        assertThat(action.getParameter("NOTES").getValue()).isEqualTo("first line\nsecond line");
+    }
+
+    private static void assertCompactParameters(SafeParametersAction action, String special) {
+        assertThat(action.getParameters()).extracting(ParameterValue::getName).containsExactly("STRING", "TEXT", "BOOLEAN", "EMPTY", "LARGE");
+        assertThat(action.getParameter("STRING")).isExactlyInstanceOf(StringParameterValue.class);
+        assertThat(action.getParameter("STRING").getValue()).isEqualTo(special);
+        assertThat(action.getParameter("STRING").getDescription()).isEqualTo("first \"line\"\nsecond <line>");
+        assertThat(action.getParameter("TEXT")).isExactlyInstanceOf(TextParameterValue.class);
+        assertThat(action.getParameter("TEXT").getValue()).isEqualTo("  leading\n\ntrailing  \n");
+        assertThat(action.getParameter("BOOLEAN").getValue()).isEqualTo(Boolean.FALSE);
+        assertThat(action.getParameter("EMPTY").getValue()).isEqualTo("");
+        FileBackedParameterValue large = (FileBackedParameterValue) action.getParameter("LARGE");
+        assertThat(large.getDescription()).isEqualTo("large & <value>");
+        assertThat(large.getLength()).isEqualTo(special.length() + LARGE_VALUE.length());
+        assertThat(large.getPreview()).startsWith(special);
+        assertThat(large.getValue()).isEqualTo(special + LARGE_VALUE);
+    }
+
+    public static class TaggedStringParameterValue extends StringParameterValue {
+        private static final long serialVersionUID = 1L;
+
+        private final String tag;
+
+        public TaggedStringParameterValue(String name, String value, String tag) {
+            super(name, value);
+            this.tag = tag;
+        }
+    }
+
+    private static SafeParametersAction newAction() {
+        return new SafeParametersAction(Arrays.<ParameterValue> asList(new StringParameterValue("VERSION", "1.0"), new StringParameterValue("LARGE", LARGE_VALUE)));
+    }
+
+    private static FreeStyleBuild build(JenkinsRule j, FreeStyleProject project, Action parameters) throws Exception {
+        return j.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(), parameters));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun;
+
+import hudson.model.Action;
+import hudson.model.BooleanParameterValue;
+import hudson.model.CauseAction;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.StringParameterValue;
+import hudson.model.TextParameterValue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SafeParametersActionTest {
+
+    @Test
+    void identical_requests_are_not_scheduled_twice() throws Exception {
+        SafeParametersAction queued = action(new StringParameterValue("VERSION", "1.0"), new BooleanParameterValue("DRY_RUN", true));
+
+        // the order of the parameters does not matter
+        SafeParametersAction request = action(new BooleanParameterValue("DRY_RUN", true), new StringParameterValue("VERSION", "1.0"));
+        assertThat(queued.shouldSchedule(actions(request, new CauseAction()))).isFalse();
+
+        // a plain parameters action with the same values is the same request
+        ParametersAction plain = new ParametersAction(new StringParameterValue("VERSION", "1.0"), new BooleanParameterValue("DRY_RUN", true));
+        assertThat(queued.shouldSchedule(actions(plain))).isFalse();
+
+        // only the first value of a repeated name is used, as by getParameter
+        request = action(new StringParameterValue("VERSION", "1.0"), new BooleanParameterValue("DRY_RUN", true), new StringParameterValue("VERSION", "2.0"));
+        assertThat(queued.shouldSchedule(actions(request))).isFalse();
+    }
+
+    @Test
+    void different_requests_are_scheduled() throws Exception {
+        SafeParametersAction queued = action(new StringParameterValue("VERSION", "1.0"), new BooleanParameterValue("DRY_RUN", true));
+
+        assertThat(queued.shouldSchedule(actions(action(new StringParameterValue("VERSION", "1.1"), new BooleanParameterValue("DRY_RUN", true))))).isTrue();
+        assertThat(queued.shouldSchedule(actions(action(new StringParameterValue("VERSION", "1.0"))))).isTrue();
+        assertThat(queued.shouldSchedule(actions(action(new StringParameterValue("VERSION", "1.0"), new BooleanParameterValue("DRY_RUN", true),
+                new StringParameterValue("BRANCH", "master"))))).isTrue();
+        // same value of another type
+        assertThat(queued.shouldSchedule(actions(action(new TextParameterValue("VERSION", "1.0"), new BooleanParameterValue("DRY_RUN", true))))).isTrue();
+        // a request without parameters
+        assertThat(queued.shouldSchedule(Collections.<Action> emptyList())).isTrue();
+    }
+
+    private static SafeParametersAction action(ParameterValue... values) {
+        return new SafeParametersAction(Arrays.asList(values));
+    }
+
+    private static List<Action> actions(Action... actions) {
+        return Arrays.asList(actions);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun.release;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.SafeParametersAction;
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.Result;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import hudson.model.queue.QueueTaskFuture;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import org.htmlunit.WebRequest;
+import org.htmlunit.WebResponse;
+import org.htmlunit.html.HtmlPage;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@WithJenkins
+class ReleaseActionTest {
+
+    @Test
+    void next_version_increments_the_patch_of_a_semantic_version() throws Exception {
+        assertThat(ReleaseAction.nextVersion("1.2.3")).isEqualTo("1.2.4");
+        assertThat(ReleaseAction.nextVersion(" 1.2.3 ")).isEqualTo("1.2.4");
+        assertThat(ReleaseAction.nextVersion("v1.2.9")).isEqualTo("v1.2.10");
+        assertThat(ReleaseAction.nextVersion("release-1.2.3")).isEqualTo("release-1.2.4");
+        assertThat(ReleaseAction.nextVersion("1.2.99999999999999999999")).isEqualTo("1.2.100000000000000000000");
+        // qualifiers
+        assertThat(ReleaseAction.nextVersion("1.2.3-rc.1")).isEqualTo("1.2.3");
+        assertThat(ReleaseAction.nextVersion("1.2.3-SNAPSHOT")).isEqualTo("1.2.3");
+        assertThat(ReleaseAction.nextVersion("1.2.3+b5")).isEqualTo("1.2.4");
+        assertThat(ReleaseAction.nextVersion("1.2.3-rc.1+b5")).isEqualTo("1.2.3");
+        // leading zeros
+        assertThat(ReleaseAction.nextVersion("2024.01.09")).isEqualTo("2024.01.10");
+        assertThat(ReleaseAction.nextVersion("1.0.007")).isEqualTo("1.0.008");
+        assertThat(ReleaseAction.nextVersion("1.0.099")).isEqualTo("1.0.100");
+        assertThat(ReleaseAction.nextVersion("1.0.99")).isEqualTo("1.0.100");
+        // no semantic version
+        assertThat(ReleaseAction.nextVersion("2.0")).isNull();
+        assertThat(ReleaseAction.nextVersion("latest")).isNull();
+        assertThat(ReleaseAction.nextVersion("")).isNull();
+        assertThat(ReleaseAction.nextVersion("1.2.3_final")).isNull();
+    }
+
+    @Test
+    void release_form_is_prefilled_from_the_last_successful_release(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        ReleaseAction action = new ReleaseAction(project, null, Arrays.<ParameterDefinition> asList( //
+                new StringParameterDefinition(ReleaseAction.RELEASE_VERSION_PARAMETER, ""), //
+                new StringParameterDefinition("BRANCH", "master")));
+        project.addAction(action);
+
+        j.assertBuildStatusSuccess(schedule(project, "1.2.3", "support/1.x"));
+        project.getBuildersList().add(new FailureBuilder());
+        // the last completed release failed
+        j.assertBuildStatus(Result.FAILURE, schedule(project, "2.0.0", "develop"));
+
+        assertThat(action.getLastSuccessfulRelease().getNumber()).isEqualTo(1);
+        assertThat(action.getLastReleaseVersion()).isEqualTo("1.2.3");
+        assertThat(action.getPrefilledParameterDefinitions()) //
+            .extracting(definition -> definition.getDefaultParameterValue().getValue()) //
+            .containsExactly("1.2.4", "support/1.x");
+    }
+
+    @Test
+    void history_keeps_values_that_look_like_json_as_strings(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        release(j, project, "[1, 2]");
+        release(j, project, "null");
+
+        String page = get(j, project, "history?limit=1");
+        assertThat(page).contains("\"number\":2", "\"result\":\"SUCCESS\"", "\"VERSION\":\"null\"", "\"next\":2");
+
+        page = get(j, project, "history?before=2&limit=1");
+        assertThat(page).contains("\"number\":1", "\"badgeTip\":\"Release [1, 2]\"", "\"VERSION\":\"[1, 2]\"", "\"next\":null");
+    }
+
+    @Test
+    void release_page_shows_the_parameters_of_the_previous_releases(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        release(j, project, "1.0");
+        release(j, project, "2.0");
+
+        HtmlPage page = j.createWebClient().goTo(project.getUrl() + "release/");
+        assertThat(page.getElementById("build_1")).isNotNull();
+        assertThat(page.getElementById("build_2").asNormalizedText()).contains("#2 - Release 2.0", "VERSION");
+
+        // the next pages are rendered the same way
+        page = j.createWebClient().goTo(project.getUrl() + "release/historyPage?before=2");
+        assertThat(page.getElementById("build_1").asNormalizedText()).contains("#1 - Release 1.0", "VERSION");
+        assertThat(page.getElementById("build_2")).isNull();
+    }
+
+    @Test
+    void search_returns_the_releases_matching_all_queries(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        release(j, project, "2.3.0");
+        release(j, project, "12.3.0");
+        release(j, project, "2.3.1");
+
+        String page = get(j, project, "search?q=" + URLEncoder.encode("VERSION=2.3.*", "UTF-8"));
+        assertThat(page).contains("\"number\":3", "\"number\":1", "\"next\":null").doesNotContain("\"number\":2");
+
+        page = get(j, project, "search?limit=1&q=" + URLEncoder.encode("VERSION=*.3.?", "UTF-8"));
+        assertThat(page).contains("\"number\":3", "\"next\":3").doesNotContain("\"number\":2");
+
+        // a parameter can not have two different values
+        page = get(j, project, "search?q=" + URLEncoder.encode("VERSION=2.3.0", "UTF-8") + "&q=" + URLEncoder.encode("VERSION=2.3.1", "UTF-8"));
+        assertThat(page).isEqualTo("{\"releases\":[],\"next\":null}");
+    }
+
+    @Test
+    void search_rejects_missing_or_invalid_queries(JenkinsRule j) throws Exception {
+        FreeStyleProject project = createProject(j);
+        release(j, project, "1.0");
+
+        WebResponse response = getResponse(j, project, "search");
+        assertThat(response.getStatusCode()).isEqualTo(400);
+        assertThat(response.getContentAsString()).contains("Missing the q parameter");
+
+        response = getResponse(j, project, "search?q=VERSION");
+        assertThat(response.getStatusCode()).isEqualTo(400);
+        assertThat(response.getContentAsString()).contains("Invalid query VERSION");
+
+        response = getResponse(j, project, "search?q=" + URLEncoder.encode("=1.0", "UTF-8"));
+        assertThat(response.getStatusCode()).isEqualTo(400);
+    }
+
+    static FreeStyleProject createProject(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        project.addAction(new ReleaseAction(project, null, Collections.<ParameterDefinition> singletonList(new StringParameterDefinition("VERSION", ""))));
+        return project;
+    }
+
+    static FreeStyleBuild release(JenkinsRule j, FreeStyleProject project, String version) throws Exception {
+        SafeParametersAction parameters = new SafeParametersAction(Arrays.<ParameterValue> asList(new StringParameterValue("VERSION", version)));
+        return j.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(), parameters, new ReleaseBuildBadgeAction("Release " + version)));
+    }
+
+    private static QueueTaskFuture<FreeStyleBuild> schedule(FreeStyleProject project, String version, String branch) {
+        SafeParametersAction parameters = new SafeParametersAction(Arrays.<ParameterValue> asList( //
+                new StringParameterValue(ReleaseAction.RELEASE_VERSION_PARAMETER, version), //
+                new StringParameterValue("BRANCH", branch)));
+        return project.scheduleBuild2(0, new Cause.UserIdCause(), parameters, new ReleaseBuildBadgeAction("Release " + version));
+    }
+
+    private static String get(JenkinsRule j, FreeStyleProject project, String path) throws Exception {
+        return j.createWebClient().goTo(project.getUrl() + "release/" + path, "application/json").getWebResponse().getContentAsString();
+    }
+
+    private static WebResponse getResponse(JenkinsRule j, FreeStyleProject project, String path) throws Exception {
+        WebRequest request = new WebRequest(new URL(j.getURL(), project.getUrl() + "release/" + path));
+        return j.createWebClient().withThrowExceptionOnFailingStatusCode(false).loadWebResponse(request);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Nikolas Falco
+ *
+ * Licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.nfalco79.jenkins.plugins.parametricrun.release;
+
+import com.github.nfalco79.jenkins.plugins.parametricrun.SafeParametersAction;
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterValue;
+import hudson.model.StringParameterValue;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@WithJenkins
+class ReleaseIndexTest {
+
+    @Test
+    void field_delimiters_are_percent_encoded() throws Exception {
+        assertThat(ReleaseIndex.escape("1.0")).isEqualTo("1.0");
+        assertThat(ReleaseIndex.escape("a\tb")).isEqualTo("a%09b");
+        assertThat(ReleaseIndex.escape("a\nb\r")).isEqualTo("a%0ab%0d");
+        assertThat(ReleaseIndex.escape("100%")).isEqualTo("100%25");
+        assertThat(ReleaseIndex.escape("A=B")).isEqualTo("A%3dB");
+
+        for (String value : Arrays.asList("", "1.0", "\t", "%", "%25", "%%0", "a=b\tc\nd\re%f", "è € 😀")) {
+            assertThat(ReleaseIndex.escape(value)).doesNotContain("\t", "\n", "\r", "=");
+            assertThat(ReleaseIndex.unescape(ReleaseIndex.escape(value))).isEqualTo(value);
+        }
+        // a truncated escape is kept as is
+        assertThat(ReleaseIndex.unescape("50%")).isEqualTo("50%");
+    }
+
+    @Test
+    void wildcards_match_the_whole_value() throws Exception {
+        assertThat(ReleaseIndex.matches("2.3.*", "2.3.1")).isTrue();
+        assertThat(ReleaseIndex.matches("2.3.*", "2.3.")).isTrue();
+        assertThat(ReleaseIndex.matches("2.3.*", "12.3.1")).isFalse();
+        assertThat(ReleaseIndex.matches("*.3.0", "12.3.0")).isTrue();
+        assertThat(ReleaseIndex.matches("*.3.0", "2.3.0-rc")).isFalse();
+        assertThat(ReleaseIndex.matches("2.?.0", "2.4.0")).isTrue();
+        assertThat(ReleaseIndex.matches("2.?.0", "2.30.0")).isFalse();
+        assertThat(ReleaseIndex.matches("a*b*c", "aXbYbZc")).isTrue();
+        assertThat(ReleaseIndex.matches("*", "")).isTrue();
+        assertThat(ReleaseIndex.matches("?", "")).isFalse();
+        // case sensitive
+        assertThat(ReleaseIndex.matches("RC*", "rc1")).isFalse();
+    }
+
+    @Test
+    void search_matches_wildcards_within_the_literal_prefix(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        writeJournal(project, //
+            "A\t1\t1000\tSUCCESS\t\tVERSION=2.3.0\tBRANCH=master", //
+            "A\t2\t2000\tSUCCESS\t\tVERSION=12.3.0\tBRANCH=master", //
+            "A\t3\t3000\tSUCCESS\t\tVERSION=2.30.0\tBRANCH=master", //
+            "A\t4\t4000\tSUCCESS\t\tVERSION=2.3.1\tBRANCH=support", //
+            "A\t5\t5000\tSUCCESS\t\tVERSION=2.4.0\tBRANCH=master", //
+            "A\t6\t6000\tSUCCESS\t\tVERSION=2.3\tBRANCH=master");
+
+        ReleaseIndex index = ReleaseIndex.of(project);
+        // values sorted after the prefix but not starting with it are skipped
+        assertThat(search(index, project, "VERSION", "2.3.*")).containsExactly(4, 1);
+        assertThat(search(index, project, "VERSION", "2.3*")).containsExactly(6, 4, 3, 1);
+        // no literal prefix, all values are visited
+        assertThat(search(index, project, "VERSION", "*.3.0")).containsExactly(2, 1);
+        assertThat(search(index, project, "VERSION", "2.?.0")).containsExactly(5, 1);
+        // no wildcard, exact value
+        assertThat(search(index, project, "VERSION", "2.3")).containsExactly(6);
+        assertThat(search(index, project, "VERSION", "3.*")).isEmpty();
+        assertThat(search(index, project, "UNKNOWN", "*")).isEmpty();
+
+        // all criteria must match
+        Map<String, String> criteria = new LinkedHashMap<>();
+        criteria.put("VERSION", "2.3*");
+        criteria.put("BRANCH", "mast?r");
+        assertThat(index.search(project, criteria, 0, 10)).extracting(ReleaseIndex.Entry::getNumber).containsExactly(6, 3, 1);
+        // paged from the cursor
+        assertThat(index.search(project, criteria, 6, 1)).extracting(ReleaseIndex.Entry::getNumber).containsExactly(3);
+        assertThat(index.search(project, criteria, 3, 10)).extracting(ReleaseIndex.Entry::getNumber).containsExactly(1);
+    }
+
+    @Test
+    void journal_is_replayed_in_order(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        writeJournal(project, //
+            "A\t1\t1000\tSUCCESS\tRelease 1.0\tVERSION=1.0\tNOTES=tab%09and%0anewline", //
+            "A\t2\t2000\tSUCCESS\tRelease%09tab\tVERSION=2.0", //
+            "A\t3\t3000\tFAILURE\t\tVERSION=3.0", //
+            "C\t3\tSUCCESS", //
+            "D\t2", //
+            "X\tunknown record", //
+            "A\t4\t4000\tSUCCESS\tRelease 4.0\tVERSION=4.0\tBRANCH=ma");
+
+        ReleaseIndex index = ReleaseIndex.of(project);
+        List<ReleaseIndex.Entry> entries = index.getEntries(project);
+        assertThat(entries).extracting(ReleaseIndex.Entry::getNumber).containsExactly(4, 3, 1);
+        assertThat(index.get(project, 1).getParameters()).containsEntry("VERSION", "1.0").containsEntry("NOTES", "tab\tand\nnewline");
+        assertThat(index.get(project, 1).getBadgeTip()).isEqualTo("Release 1.0");
+        assertThat(index.get(project, 3).getResult()).isEqualTo("SUCCESS");
+        assertThat(index.get(project, 3).getBadgeTip()).isEmpty();
+        assertThat(index.get(project, 2)).isNull();
+        assertThat(index.getLastSuccessful(project).getNumber()).isEqualTo(4);
+        assertThat(index.search(project, Collections.singletonMap("VERSION", "2.0"), 0, 10)).isEmpty();
+    }
+
+    @Test
+    void index_is_rebuilt_when_the_journal_is_missing(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        release(j, project, "1.0");
+        j.buildAndAssertSuccess(project);
+        release(j, project, "2.0\tbeta");
+
+        File journal = new File(project.getRootDir(), ReleaseIndex.INDEX_FILE);
+        Files.deleteIfExists(journal.toPath());
+        j.jenkins.reload();
+        project = j.jenkins.getItemByFullName("project", FreeStyleProject.class);
+
+        ReleaseIndex index = ReleaseIndex.of(project);
+        assertThat(index.getEntries(project)).extracting(ReleaseIndex.Entry::getNumber).containsExactly(3, 1);
+        assertThat(index.get(project, 3).getParameters()).containsEntry("VERSION", "2.0\tbeta");
+        assertThat(index.get(project, 3).getBadgeTip()).isEqualTo("Release 2.0\tbeta");
+        assertThat(journal).isFile();
+        // one record for each release, delimiters encoded
+        assertThat(Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8)).hasSize(2).allMatch(line -> line.startsWith("A\t"));
+
+        // the journal follows the next builds
+        release(j, project, "3.0");
+        assertThat(index.getLastSuccessful(project).getNumber()).isEqualTo(4);
+        j.jenkins.reload();
+        project = j.jenkins.getItemByFullName("project", FreeStyleProject.class);
+        assertThat(ReleaseIndex.of(project).getEntries(project)).extracting(ReleaseIndex.Entry::getNumber).containsExactly(4, 3, 1);
+    }
+
+    @Test
+    void builds_interrupted_by_a_restart_are_completed_on_load(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("project");
+        release(j, project, "1.0");
+        release(j, project, "2.0");
+        // the completion of build 2 was not recorded and build 3 is gone
+        writeJournal(project, //
+            "A\t1\t1000\tSUCCESS\tRelease 1.0\tVERSION=1.0", //
+            "A\t2\t2000\t-\tRelease 2.0\tVERSION=2.0", //
+            "A\t3\t3000\t-\tRelease 3.0\tVERSION=3.0");
+        j.jenkins.reload();
+        project = j.jenkins.getItemByFullName("project", FreeStyleProject.class);
+
+        ReleaseIndex index = ReleaseIndex.of(project);
+        assertThat(index.getEntries(project)).extracting(ReleaseIndex.Entry::getNumber).containsExactly(2, 1);
+        assertThat(index.get(project, 2).getResult()).isEqualTo("SUCCESS");
+        assertThat(index.getLastSuccessful(project).getNumber()).isEqualTo(2);
+
+        // the completion is written in the journal
+        File journal = new File(project.getRootDir(), ReleaseIndex.INDEX_FILE);
+        assertThat(Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8)).noneMatch(line -> line.contains("\t-\t"));
+    }
+
+    private static List<Integer> search(ReleaseIndex index, FreeStyleProject project, String name, String pattern) {
+        List<Integer> numbers = new ArrayList<>();
+        for (ReleaseIndex.Entry entry : index.search(project, Collections.singletonMap(name, pattern), 0, 10)) {
+            numbers.add(entry.getNumber());
+        }
+        return numbers;
+    }
+
+    private static FreeStyleBuild release(JenkinsRule j, FreeStyleProject project, String version) throws Exception {
+        SafeParametersAction parameters = new SafeParametersAction(Arrays.<ParameterValue> asList(new StringParameterValue("VERSION", version)));
+        return j.assertBuildStatusSuccess(project.scheduleBuild2(0, new Cause.UserIdCause(), parameters, new ReleaseBuildBadgeAction("Release " + version)));
+    }
+
+    private static void writeJournal(FreeStyleProject project, String... records) throws Exception {
+        Files.write(new File(project.getRootDir(), ReleaseIndex.INDEX_FILE).toPath(), Arrays.asList(records), StandardCharsets.UTF_8);
+    }
+}